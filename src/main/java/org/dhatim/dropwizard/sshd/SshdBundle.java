@@ -1,5 +1,6 @@
 package org.dhatim.dropwizard.sshd;
 
+import com.codahale.metrics.Gauge;
 import io.dropwizard.core.Configuration;
 import io.dropwizard.core.ConfiguredBundle;
 import io.dropwizard.core.setup.Bootstrap;
@@ -18,9 +19,11 @@ import org.apache.sshd.server.channel.ChannelSession;
 import org.apache.sshd.server.command.Command;
 import org.apache.sshd.sftp.server.SftpSubsystem;
 import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+import org.dhatim.fs.util.SpillDirectory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.List;
 
@@ -43,6 +46,15 @@ public abstract class SshdBundle<T extends Configuration> implements ConfiguredB
             return;
         }
 
+        if (sshConf.spillDirectory != null && !sshConf.spillDirectory.trim().isEmpty()) {
+            SpillDirectory.setDefault(new SpillDirectory(Paths.get(sshConf.spillDirectory), sshConf.spillMaxSize, sshConf.spillPoolSize));
+            LOG.info("SSHD: spill transfers to {}", sshConf.spillDirectory);
+        }
+        SpillDirectory spill = SpillDirectory.getDefault();
+        environment.metrics().register("sshd.spill.bytes", (Gauge<Long>) spill::getBytesInUse);
+        environment.metrics().register("sshd.spill.files", (Gauge<Integer>) spill::getFilesInUse);
+        environment.metrics().register("sshd.spill.pooled", (Gauge<Integer>) spill::getPooledFiles);
+
         SshServer server = SshServer.setUpDefaultServer();
         server.setSubsystemFactories(Arrays.asList(new SftpSubsystemFactory() {
 
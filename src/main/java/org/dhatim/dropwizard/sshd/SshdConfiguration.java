@@ -20,4 +20,10 @@ public class SshdConfiguration {
     public String macAlgorithms = "";
 
     public String kexAlgorithms = "";
+
+    public String spillDirectory = null;
+
+    public long spillMaxSize = Long.MAX_VALUE;
+
+    public int spillPoolSize = 16;
 }
@@ -1,22 +1,48 @@
 package org.dhatim.dropwizard.sshd;
 
+import org.apache.sshd.common.NamedFactory;
+import org.apache.sshd.common.digest.Digest;
 import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.common.util.buffer.ByteArrayBuffer;
 import org.apache.sshd.common.util.threads.CloseableExecutorService;
 import org.apache.sshd.server.channel.ChannelDataReceiver;
 import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.sftp.common.SftpConstants;
 import org.apache.sshd.sftp.server.*;
+import org.dhatim.fs.base.VirtualPath;
+import org.dhatim.fs.virtual.VirtualFileSystem;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * An SFTP subsystem bounding the requests waiting to be processed.
+ * Paths of virtual filesystems are looked up through their asynchronous SPI before a request is processed: while a
+ * lookup is in flight, the request and the ones following it are set aside and the executor thread is released, so
+ * that a slow backend does not pin it. Requests are still processed one at a time, in order.
+ */
 public class ThrottledSftpSubsystem extends SftpSubsystem {
 
+    private static final Buffer RESUME = new ByteArrayBuffer(0);
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
     private final int capacity;
     private final Lock lock = new ReentrantLock();
     private final Condition hasCapacity = lock.newCondition();
+    private final BlockingQueue<Buffer> deferred = new LinkedBlockingQueue<>();
+    // the following fields are only used by the executor thread
+    private CompletableFuture<Void> lookup;
+    private boolean waiting;
+    private Path listed;
 
     public ThrottledSftpSubsystem(CloseableExecutorService executorService,
                                   UnsupportedAttributePolicy policy,
@@ -60,7 +86,7 @@ public class ThrottledSftpSubsystem extends SftpSubsystem {
     public int data(ChannelSession channel, byte[] buf, int start, int len) throws IOException {
         lock.lock();
         try {
-            while (requests.size() >= capacity) {
+            while (requests.size() + deferred.size() >= capacity) {
                 hasCapacity.await(1, TimeUnit.SECONDS);
             }
         } catch (InterruptedException ex) {
@@ -72,16 +98,156 @@ public class ThrottledSftpSubsystem extends SftpSubsystem {
         return super.data(channel, buf, start, len);
     }
 
+    /**
+     * Answer whole-file {@code md5-hash} requests with the hash precomputed by the virtual filesystem or cached for the
+     * current version of the file. Otherwise the file is read as usual, through the file system accessor, and its hash
+     * is cached.
+     */
+    @Override
+    protected byte[] doMD5Hash(int id, Path path, long startOffset, long length, byte[] quickCheckHash) throws Exception {
+        if (quickCheckHash.length == 0 && isVirtual(path)) {
+            Optional<byte[]> hash = hash(path, startOffset, length, 0, "MD5", () -> super.doMD5Hash(id, path, startOffset, length, quickCheckHash));
+            if (hash.isPresent()) {
+                return hash.get();
+            }
+        }
+        return super.doMD5Hash(id, path, startOffset, length, quickCheckHash);
+    }
+
+    /**
+     * Answer whole-file {@code check-file} requests, without blocks, like {@link #doMD5Hash}.
+     */
+    @Override
+    protected void doCheckFileHash(int id, Path file, NamedFactory<? extends Digest> factory, long startOffset, long length, int blockSize, Buffer buffer) throws Exception {
+        if (isVirtual(file)) {
+            Optional<byte[]> hash = hash(file, startOffset, length, blockSize, factory.create().getAlgorithm(), () -> {
+                Buffer computed = new ByteArrayBuffer();
+                super.doCheckFileHash(id, file, factory, startOffset, length, blockSize, computed);
+                computed.getString();
+                return computed.getBytes();
+            });
+            if (hash.isPresent()) {
+                buffer.putString(factory.getName());
+                buffer.putBytes(hash.get());
+                return;
+            }
+        }
+        super.doCheckFileHash(id, file, factory, startOffset, length, blockSize, buffer);
+    }
+
+    private static boolean isVirtual(Path path) {
+        return path instanceof VirtualPath && path.getFileSystem() instanceof VirtualFileSystem;
+    }
+
+    /**
+     * Hash a virtual file, computing a hash the filesystem has neither precomputed nor cached with the subsystem, whose
+     * failures are thrown as is.
+     */
+    private static Optional<byte[]> hash(Path path, long startOffset, long length, int blockSize, String algorithm, Callable<byte[]> compute) throws Exception {
+        try {
+            return ((VirtualFileSystem) path.getFileSystem()).hash((VirtualPath) path, startOffset, length, blockSize, algorithm, () -> {
+                try {
+                    return compute.call();
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new ComputeFailure(e);
+                }
+            });
+        } catch (ComputeFailure e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    private static final class ComputeFailure extends IOException {
+
+        private ComputeFailure(Exception cause) {
+            super(cause);
+        }
+    }
+
     @Override
     protected void process(Buffer buffer) throws IOException {
-        super.process(buffer);
-        lock.lock();
+        if (buffer == RESUME) {
+            waiting = false;
+        } else {
+            deferred.add(buffer);
+        }
         try {
-            if (requests.size() < capacity) {
-                hasCapacity.signalAll();
+            while (!waiting && !deferred.isEmpty()) {
+                Buffer next = deferred.peek();
+                if (lookup == null) {
+                    lookup = prefetch(next);
+                    if (!lookup.isDone()) {
+                        waiting = true;
+                        // processing goes on in order once the lookup is over
+                        lookup.whenComplete((result, e) -> requests.add(RESUME));
+                        return;
+                    }
+                }
+                deferred.remove();
+                lookup = null;
+                try {
+                    super.process(next);
+                } finally {
+                    if (listed != null) {
+                        ((VirtualFileSystem) listed.getFileSystem()).discardPrefetched((VirtualPath) listed);
+                        listed = null;
+                    }
+                }
             }
         } finally {
-            lock.unlock();
+            lock.lock();
+            try {
+                if (requests.size() + deferred.size() < capacity) {
+                    hasCapacity.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Look up the path of a request, or the listing of a directory being opened, without blocking.
+     */
+    private CompletableFuture<Void> prefetch(Buffer buffer) {
+        int rpos = buffer.rpos();
+        try {
+            buffer.getInt();
+            int type = buffer.getUByte();
+            buffer.getInt();
+            switch (type) {
+                case SftpConstants.SSH_FXP_OPEN:
+                case SftpConstants.SSH_FXP_STAT:
+                case SftpConstants.SSH_FXP_LSTAT:
+                case SftpConstants.SSH_FXP_SETSTAT:
+                case SftpConstants.SSH_FXP_REMOVE:
+                case SftpConstants.SSH_FXP_RMDIR:
+                case SftpConstants.SSH_FXP_RENAME: {
+                    Path path = resolveFile(buffer.getString());
+                    return isVirtual(path) ? ((VirtualFileSystem) path.getFileSystem()).prefetch((VirtualPath) path) : DONE;
+                }
+                case SftpConstants.SSH_FXP_MKDIR: {
+                    Path parent = resolveFile(buffer.getString()).getParent();
+                    return parent != null && isVirtual(parent) ? ((VirtualFileSystem) parent.getFileSystem()).prefetch((VirtualPath) parent) : DONE;
+                }
+                case SftpConstants.SSH_FXP_OPENDIR: {
+                    Path path = resolveFile(buffer.getString());
+                    if (!isVirtual(path)) {
+                        return DONE;
+                    }
+                    listed = path;
+                    return ((VirtualFileSystem) path.getFileSystem()).prefetchDirectory((VirtualPath) path);
+                }
+                default:
+                    return DONE;
+            }
+        } catch (IOException | RuntimeException e) {
+            // a malformed request or an invalid path: processing the request reports it
+            return DONE;
+        } finally {
+            buffer.rpos(rpos);
         }
     }
 
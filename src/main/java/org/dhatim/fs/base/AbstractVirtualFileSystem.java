@@ -15,6 +15,7 @@ import java.nio.file.attribute.PosixFileAttributeView;
 import java.nio.file.attribute.UserPrincipal;
 import java.nio.file.attribute.UserPrincipalLookupService;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -54,6 +55,8 @@ public abstract class AbstractVirtualFileSystem extends BaseFileSystem<VirtualPa
         
     }
     
+    private static final Set<String> SUPPORTED_VIEWS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("basic", "owner", "posix")));
+    
     private boolean open;
     private final URI uri;
     
@@ -90,7 +93,7 @@ public abstract class AbstractVirtualFileSystem extends BaseFileSystem<VirtualPa
 
     @Override
     public Set<String> supportedFileAttributeViews() {
-        return new HashSet<>(Arrays.asList("basic", "owner", "posix"));
+        return SUPPORTED_VIEWS;
     }
 
     @Override
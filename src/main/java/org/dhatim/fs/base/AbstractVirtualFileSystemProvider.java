@@ -1,6 +1,7 @@
 package org.dhatim.fs.base;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
@@ -31,48 +32,115 @@ import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.UserPrincipal;
 import java.nio.file.spi.FileSystemProvider;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.sshd.common.util.GenericUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public abstract class AbstractVirtualFileSystemProvider extends FileSystemProvider {
     
+    /**
+     * The parsed form of a "view:attr1,attr2" attribute string, cached since clients keep asking for the same few.
+     */
+    private static final class AttributeSelector {
+        
+        private static final Logger LOG = LoggerFactory.getLogger(AttributeSelector.class);
+        
+        private final String view;
+        private final String attrs;
+        private final boolean posix;
+        private final int mask;
+        
+        private AttributeSelector(String view, String attrs, boolean posix, int mask) {
+            this.view = view;
+            this.attrs = attrs;
+            this.posix = posix;
+            this.mask = mask;
+        }
+        
+        private static AttributeSelector compile(String attributes) {
+            String view;
+            String attrs;
+            int i = attributes.indexOf(':');
+            if (i == -1) {
+                view = "basic";
+                attrs = attributes;
+            } else {
+                view = attributes.substring(0, i++);
+                attrs = attributes.substring(i);
+            }
+            
+            boolean posix = "basic".equalsIgnoreCase(view) || "posix".equalsIgnoreCase(view) || "owner".equalsIgnoreCase(view);
+            int mask = 0;
+            if ("*".equals(attrs)) {
+                mask = PosixAttributeMap.Attribute.ALL;
+            } else {
+                for (String attr : attrs.split(",")) {
+                    PosixAttributeMap.Attribute attribute = PosixAttributeMap.Attribute.of(attr);
+                    if (attribute != null) {
+                        mask |= attribute.bit();
+                    } else if (posix) {
+                        LOG.debug("readPosixViewAttributes[{}:{}] ignored for {}", view, attr, attrs);
+                    }
+                }
+            }
+            return new AttributeSelector(view, attrs, posix, mask);
+        }
+        
+        @Override
+        public String toString() {
+            return view + ":" + attrs;
+        }
+    }
+    
+    private static final int MAX_SELECTORS = 256;
+    
     protected final Logger log = LoggerFactory.getLogger(getClass());
     
-    private final HashMap<URI, AbstractVirtualFileSystem> fileSystems = new HashMap<>();
+    private final ConcurrentHashMap<URI, CompletableFuture<AbstractVirtualFileSystem>> fileSystems = new ConcurrentHashMap<>();
+    
+    private final ConcurrentHashMap<String, AttributeSelector> selectors = new ConcurrentHashMap<>();
     
     @Override
     public FileSystem newFileSystem(URI uri, Map<String, ?> env) throws IOException {
-        synchronized (fileSystems) {
-            if (fileSystems.containsKey(uri)) {
-                throw new FileSystemAlreadyExistsException();
-            }
+        // reserve the URI first so that filesystems of different URIs are created concurrently
+        CompletableFuture<AbstractVirtualFileSystem> creation = new CompletableFuture<>();
+        if (fileSystems.putIfAbsent(uri, creation) != null) {
+            throw new FileSystemAlreadyExistsException();
+        }
+        try {
             AbstractVirtualFileSystem vfs = createFileSystem(uri, env);
-            fileSystems.put(uri, vfs);
+            creation.complete(vfs);
             return vfs;
+        } catch (IOException | RuntimeException | Error e) {
+            fileSystems.remove(uri, creation);
+            creation.completeExceptionally(e);
+            throw e;
         }
     }
 
     @Override
     public FileSystem getFileSystem(URI uri) {
-        synchronized (fileSystems) {
-            AbstractVirtualFileSystem fs = fileSystems.get(uri);
-            if (fs == null) {
-                throw new FileSystemNotFoundException();
-            }
-            return fs;
+        CompletableFuture<AbstractVirtualFileSystem> creation = fileSystems.get(uri);
+        if (creation == null) {
+            throw new FileSystemNotFoundException();
+        }
+        try {
+            // wait for a concurrent creation of the same filesystem
+            return creation.join();
+        } catch (CompletionException | CancellationException e) {
+            throw new FileSystemNotFoundException();
         }
     }
     
     void removeFileSystem(AbstractVirtualFileSystem virtualFileSystem) {
-        synchronized (fileSystems) {
-            fileSystems.remove(virtualFileSystem.getURI());
-        }
+        fileSystems.computeIfPresent(virtualFileSystem.getURI(), (uri, creation) -> creation.getNow(null) == virtualFileSystem ? null : creation);
     }
 
     @Override
@@ -242,85 +310,34 @@ public abstract class AbstractVirtualFileSystemProvider extends FileSystemProvid
 
     @Override
     public Map<String, Object> readAttributes(Path path, String attributes, LinkOption... options) throws IOException {
-        String view;
-        String attrs;
-        int i = attributes.indexOf(':');
-        if (i == -1) {
-            view = "basic";
-            attrs = attributes;
-        } else {
-            view = attributes.substring(0, i++);
-            attrs = attributes.substring(i);
+        AttributeSelector selector = selectors.get(attributes);
+        if (selector == null) {
+            selector = AttributeSelector.compile(attributes);
+            if (selectors.size() < MAX_SELECTORS) {
+                selectors.putIfAbsent(attributes, selector);
+            }
         }
-
-        return readAttributes(path, view, attrs, options);
+        return readAttributes(path, selector, options);
     }
     
-    private Map<String, Object> readAttributes(Path path, String view, String attrs, LinkOption... options) throws IOException {
+    private Map<String, Object> readAttributes(Path path, AttributeSelector selector, LinkOption... options) throws IOException {
         VirtualPath p = toVirtualPath(path);
         AbstractVirtualFileSystem fs = p.getFileSystem();
         Collection<String> views = fs.supportedFileAttributeViews();
-        if (GenericUtils.isEmpty(views) || (!views.contains(view))) {
-            throw new UnsupportedOperationException("readAttributes(" + path + ")[" + view + ":" + attrs + "] view not supported: " + views);
+        if (GenericUtils.isEmpty(views) || (!views.contains(selector.view))) {
+            throw new UnsupportedOperationException("readAttributes(" + path + ")[" + selector + "] view not supported: " + views);
         }
 
-        if ("basic".equalsIgnoreCase(view) || "posix".equalsIgnoreCase(view) || "owner".equalsIgnoreCase(view)) {
-            return readPosixViewAttributes(p, view, attrs, options);
-        } else  {
-            throw new UnsupportedOperationException("readCustomViewAttributes(" + path + ")[" + view + ":" + attrs + "] view not supported");
-        }
-    }
-    
-    private Map<String, Object> readPosixViewAttributes(VirtualPath path, String view, String attrs, LinkOption... options) throws IOException {
-        PosixFileAttributes v = readAttributes(path, PosixFileAttributes.class, options);
-        if ("*".equals(attrs)) {
-            attrs = "lastModifiedTime,lastAccessTime,creationTime,size,isRegularFile,isDirectory,isSymbolicLink,isOther,fileKey,owner,permissions,group";
-        }
-
-        Map<String, Object> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
-        for (String attr : attrs.split(",")) {
-            switch (attr) {
-                case "lastModifiedTime":
-                    map.put(attr, v.lastModifiedTime());
-                    break;
-                case "lastAccessTime":
-                    map.put(attr, v.lastAccessTime());
-                    break;
-                case "creationTime":
-                    map.put(attr, v.creationTime());
-                    break;
-                case "size":
-                    map.put(attr, v.size());
-                    break;
-                case "isRegularFile":
-                    map.put(attr, v.isRegularFile());
-                    break;
-                case "isDirectory":
-                    map.put(attr, v.isDirectory());
-                    break;
-                case "isSymbolicLink":
-                    map.put(attr, v.isSymbolicLink());
-                    break;
-                case "isOther":
-                    map.put(attr, v.isOther());
-                    break;
-                case "fileKey":
-                    map.put(attr, v.fileKey());
-                    break;
-                case "owner":
-                    map.put(attr, v.owner());
-                    break;
-                case "permissions":
-                    map.put(attr, v.permissions());
-                    break;
-                case "group":
-                    map.put(attr, v.group());
-                    break;
-                default:
-                    log.debug("readPosixViewAttributes({})[{}:{}] ignored for {}", path, view, attr, attrs);
+        if (selector.posix) {
+            try {
+                return new PosixAttributeMap(readAttributes(p, PosixFileAttributes.class, options), selector.mask);
+            } catch (UncheckedIOException e) {
+                // attributes are read lazily, and principal lookups may fail
+                throw e.getCause();
             }
+        } else  {
+            throw new UnsupportedOperationException("readCustomViewAttributes(" + path + ")[" + selector + "] view not supported");
         }
-        return map;
     }
 
     @Override
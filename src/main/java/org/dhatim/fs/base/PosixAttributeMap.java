@@ -0,0 +1,133 @@
+package org.dhatim.fs.base;
+
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * A read-only map of posix attributes with a fixed layout: one slot per attribute, the selected ones given by a
+ * bitmask. Keys are case insensitive.
+ */
+final class PosixAttributeMap extends AbstractMap<String, Object> {
+
+    enum Attribute {
+        LAST_MODIFIED_TIME("lastModifiedTime", PosixFileAttributes::lastModifiedTime),
+        LAST_ACCESS_TIME("lastAccessTime", PosixFileAttributes::lastAccessTime),
+        CREATION_TIME("creationTime", PosixFileAttributes::creationTime),
+        SIZE("size", PosixFileAttributes::size),
+        IS_REGULAR_FILE("isRegularFile", PosixFileAttributes::isRegularFile),
+        IS_DIRECTORY("isDirectory", PosixFileAttributes::isDirectory),
+        IS_SYMBOLIC_LINK("isSymbolicLink", PosixFileAttributes::isSymbolicLink),
+        IS_OTHER("isOther", PosixFileAttributes::isOther),
+        FILE_KEY("fileKey", PosixFileAttributes::fileKey),
+        OWNER("owner", PosixFileAttributes::owner),
+        PERMISSIONS("permissions", PosixFileAttributes::permissions),
+        GROUP("group", PosixFileAttributes::group);
+
+        static final Attribute[] VALUES = values();
+        static final int ALL = (1 << VALUES.length) - 1;
+
+        private final String attributeName;
+        private final Function<PosixFileAttributes, Object> getter;
+
+        Attribute(String attributeName, Function<PosixFileAttributes, Object> getter) {
+            this.attributeName = attributeName;
+            this.getter = getter;
+        }
+
+        int bit() {
+            return 1 << ordinal();
+        }
+
+        static Attribute of(String name) {
+            for (Attribute attribute : VALUES) {
+                if (attribute.attributeName.equals(name)) {
+                    return attribute;
+                }
+            }
+            return null;
+        }
+
+        static Attribute ofIgnoreCase(String name) {
+            for (Attribute attribute : VALUES) {
+                if (attribute.attributeName.equalsIgnoreCase(name)) {
+                    return attribute;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final int mask;
+    private final Object[] values = new Object[Attribute.VALUES.length];
+
+    PosixAttributeMap(PosixFileAttributes attributes, int mask) {
+        this.mask = mask;
+        for (Attribute attribute : Attribute.VALUES) {
+            if ((mask & attribute.bit()) != 0) {
+                values[attribute.ordinal()] = attribute.getter.apply(attributes);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return Integer.bitCount(mask);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return slot(key) != null;
+    }
+
+    @Override
+    public Object get(Object key) {
+        Attribute attribute = slot(key);
+        return attribute == null ? null : values[attribute.ordinal()];
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public int size() {
+                return PosixAttributeMap.this.size();
+            }
+
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<Entry<String, Object>>() {
+                    private int remaining = mask;
+
+                    @Override
+                    public boolean hasNext() {
+                        return remaining != 0;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (remaining == 0) {
+                            throw new NoSuchElementException();
+                        }
+                        int i = Integer.numberOfTrailingZeros(remaining);
+                        remaining &= remaining - 1;
+                        return new SimpleImmutableEntry<>(Attribute.VALUES[i].attributeName, values[i]);
+                    }
+                };
+            }
+        };
+    }
+
+    private Attribute slot(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        Attribute attribute = Attribute.ofIgnoreCase((String) key);
+        return attribute != null && (mask & attribute.bit()) != 0 ? attribute : null;
+    }
+
+}
@@ -0,0 +1,255 @@
+package org.dhatim.fs.memory;
+
+import org.dhatim.fs.base.VirtualPath;
+import org.dhatim.fs.virtual.VirtualDirectory;
+import org.dhatim.fs.virtual.VirtualFile;
+import org.dhatim.fs.virtual.VirtualNameFilter;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.GroupPrincipal;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+
+/**
+ * A directory of a memory tree. Children are held in a sorted concurrent map: lookups and listings are lock-free, and
+ * creations, deletions and renames within the directory are atomic updates of that map, costing a logarithmic
+ * insertion rather than a copy of the directory.
+ * Moves between directories are serialized by a lock shared by the whole tree, which keeps a directory from being
+ * moved below itself.
+ */
+public class MemoryDirectory implements VirtualDirectory {
+
+    private static final Set<PosixFilePermission> DEFAULT_PERMISSIONS = PosixFilePermissions.fromString("rwxr-xr-x");
+
+    private final MemoryNode node;
+    private final Object treeLock;
+    private final ConcurrentNavigableMap<String, VirtualFile> children = new ConcurrentSkipListMap<>();
+
+    /**
+     * Create the root of a new tree.
+     */
+    public MemoryDirectory() {
+        this(null, "", new Object());
+    }
+
+    private MemoryDirectory(MemoryDirectory parent, String name, Object treeLock) {
+        this.node = new MemoryNode(parent, name, DEFAULT_PERMISSIONS);
+        this.treeLock = treeLock;
+    }
+
+    MemoryNode node() {
+        return node;
+    }
+
+    @Override
+    public VirtualDirectory getParent() {
+        return node.parent();
+    }
+
+    @Override
+    public String getName() {
+        return node.name();
+    }
+
+    @Override
+    public FileChannel open(Set<? extends OpenOption> options) throws IOException {
+        throw new FileSystemException(getName(), null, "is a directory");
+    }
+
+    @Override
+    public Optional<VirtualFile> find(String name) {
+        return Optional.ofNullable(children.get(name));
+    }
+
+    @Override
+    public Stream<VirtualFile> getChildren() {
+        return children.values().stream();
+    }
+
+    @Override
+    public Stream<VirtualFile> getChildren(VirtualNameFilter filter) {
+        String prefix = filter.getLiteralPrefix();
+        // names are sorted: only scan the range sharing the literal prefix of the pattern
+        Map<String, VirtualFile> range = prefix.isEmpty() ? children : children.subMap(prefix, prefix + Character.MAX_VALUE);
+        return range.entrySet().stream()
+                .filter(child -> filter.test(child.getKey()))
+                .map(Map.Entry::getValue);
+    }
+
+    public int getChildCount() {
+        return children.size();
+    }
+
+    @Override
+    public FileChannel createFile(VirtualPath path, Set<? extends OpenOption> options) throws IOException {
+        String name = path.getFileName().toString();
+        VirtualFile existing = children.get(name);
+        if (existing == null) {
+            if (!options.contains(CREATE) && !options.contains(CREATE_NEW)) {
+                throw new NoSuchFileException(path.toString());
+            }
+            MemoryFile created = new MemoryFile(this, name);
+            existing = children.putIfAbsent(name, created);
+            if (existing == null) {
+                node.touch();
+                return created.open(options);
+            }
+        }
+        if (options.contains(CREATE_NEW)) {
+            throw new FileAlreadyExistsException(path.toString());
+        }
+        if (!(existing instanceof MemoryFile)) {
+            throw new FileSystemException(path.toString(), null, "is a directory");
+        }
+        return existing.open(options);
+    }
+
+    @Override
+    public VirtualDirectory createDirectory(String name) throws IOException {
+        MemoryDirectory directory = new MemoryDirectory(this, name, treeLock);
+        if (children.putIfAbsent(name, directory) != null) {
+            throw new FileAlreadyExistsException(name);
+        }
+        node.touch();
+        return directory;
+    }
+
+    @Override
+    public void delete(String name) throws IOException {
+        VirtualFile child = children.get(name);
+        if (child == null) {
+            throw new NoSuchFileException(name);
+        }
+        if (child instanceof MemoryDirectory && !((MemoryDirectory) child).children.isEmpty()) {
+            throw new DirectoryNotEmptyException(name);
+        }
+        if (!children.remove(name, child)) {
+            throw new NoSuchFileException(name);
+        }
+        node.touch();
+    }
+
+    /**
+     * Move a child within the tree; the moved instance keeps its children and open channels on a moved file keep
+     * working. Moves to another tree are not supported.
+     * The child is linked under its new name before being unlinked from the old one, so that it is always found.
+     */
+    @Override
+    public VirtualFile move(String name, VirtualDirectory target, String newName, boolean replace) throws IOException {
+        if (!(target instanceof MemoryDirectory) || ((MemoryDirectory) target).treeLock != treeLock) {
+            throw new UnsupportedOperationException("move to another tree");
+        }
+        MemoryDirectory destination = (MemoryDirectory) target;
+        if (destination == this) {
+            return moveTo(name, destination, newName, replace);
+        }
+        synchronized (treeLock) {
+            VirtualFile child = children.get(name);
+            for (MemoryDirectory d = destination; d != null; d = d.node.parent()) {
+                if (d == child) {
+                    throw new FileSystemException(name, newName, "cannot move a directory into itself");
+                }
+            }
+            return moveTo(name, destination, newName, replace);
+        }
+    }
+
+    private VirtualFile moveTo(String name, MemoryDirectory destination, String newName, boolean replace) throws IOException {
+        VirtualFile child = children.get(name);
+        if (child == null) {
+            throw new NoSuchFileException(name);
+        }
+        VirtualFile existing = destination.children.putIfAbsent(newName, child);
+        if (existing == child) {
+            return child;
+        }
+        if (existing != null) {
+            if (!replace) {
+                throw new FileAlreadyExistsException(newName);
+            }
+            if (existing instanceof MemoryDirectory && !((MemoryDirectory) existing).children.isEmpty()) {
+                throw new DirectoryNotEmptyException(newName);
+            }
+            if (!destination.children.replace(newName, existing, child)) {
+                // changed concurrently
+                throw new FileAlreadyExistsException(newName);
+            }
+        }
+        if (!children.remove(name, child)) {
+            // moved or deleted concurrently: give the new name back
+            if (existing == null) {
+                destination.children.remove(newName, child);
+            } else {
+                destination.children.replace(newName, child, existing);
+            }
+            throw new NoSuchFileException(name);
+        }
+        MemoryNode.of(child).relink(destination, newName);
+        node.touch();
+        destination.node.touch();
+        return child;
+    }
+
+    @Override
+    public Optional<FileTime> getLastModifiedTime() {
+        return node.lastModifiedTime();
+    }
+
+    @Override
+    public Optional<FileTime> getCreationTime() {
+        return node.creationTime();
+    }
+
+    @Override
+    public Optional<FileTime> getLastAccessTime() {
+        return node.lastAccessTime();
+    }
+
+    @Override
+    public Set<PosixFilePermission> getPermissions() {
+        return node.permissions();
+    }
+
+    @Override
+    public long getSize() {
+        return 0;
+    }
+
+    @Override
+    public void setOwner(UserPrincipal owner) throws IOException {
+        node.setOwner(owner.getName());
+    }
+
+    @Override
+    public void setTimes(FileTime lastModifiedTime, FileTime lastAccessTime, FileTime createTime) throws IOException {
+        node.setTimes(lastModifiedTime, lastAccessTime, createTime);
+    }
+
+    @Override
+    public void setPermissions(Set<PosixFilePermission> perms) throws IOException {
+        node.setPermissions(perms);
+    }
+
+    @Override
+    public void setGroup(GroupPrincipal group) throws IOException {
+        node.setGroup(group.getName());
+    }
+
+}
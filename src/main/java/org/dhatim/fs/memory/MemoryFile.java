@@ -0,0 +1,262 @@
+package org.dhatim.fs.memory;
+
+import org.dhatim.fs.virtual.VirtualDirectory;
+import org.dhatim.fs.virtual.VirtualFile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.GroupPrincipal;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A file of a memory tree. The content is held off-heap in fixed-size chunks, allocated as the file grows: appending
+ * never copies what was already written.
+ * Reads of a file run concurrently; writes are serialized.
+ */
+public class MemoryFile implements VirtualFile {
+
+    static final int CHUNK_SIZE = 64 * 1024;
+    private static final Set<PosixFilePermission> DEFAULT_PERMISSIONS = PosixFilePermissions.fromString("rw-r--r--");
+    // shared by all files, so that a file created again at the same path never repeats a version
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private final MemoryNode node;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private long size;
+    private long version = VERSIONS.incrementAndGet();
+
+    MemoryFile(MemoryDirectory parent, String name) {
+        node = new MemoryNode(parent, name, DEFAULT_PERMISSIONS);
+    }
+
+    MemoryNode node() {
+        return node;
+    }
+
+    @Override
+    public VirtualDirectory getParent() {
+        return node.parent();
+    }
+
+    @Override
+    public String getName() {
+        return node.name();
+    }
+
+    @Override
+    public FileChannel open(Set<? extends OpenOption> options) throws IOException {
+        boolean append = options.contains(APPEND);
+        boolean writable = append || options.contains(WRITE);
+        boolean readable = options.contains(READ) || !writable;
+        if (writable && options.contains(TRUNCATE_EXISTING)) {
+            truncate(0);
+        }
+        return new MemoryFileChannel(this, readable, writable, append);
+    }
+
+    @Override
+    public Optional<FileTime> getLastModifiedTime() {
+        return node.lastModifiedTime();
+    }
+
+    @Override
+    public Optional<FileTime> getCreationTime() {
+        return node.creationTime();
+    }
+
+    @Override
+    public Optional<FileTime> getLastAccessTime() {
+        return node.lastAccessTime();
+    }
+
+    @Override
+    public Set<PosixFilePermission> getPermissions() {
+        return node.permissions();
+    }
+
+    @Override
+    public long getSize() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return a counter bumped by every change of the content
+     */
+    @Override
+    public Optional<String> getVersion() {
+        lock.readLock().lock();
+        try {
+            return Optional.of(Long.toString(version));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void setOwner(UserPrincipal owner) throws IOException {
+        node.setOwner(owner.getName());
+    }
+
+    @Override
+    public void setTimes(FileTime lastModifiedTime, FileTime lastAccessTime, FileTime createTime) throws IOException {
+        node.setTimes(lastModifiedTime, lastAccessTime, createTime);
+    }
+
+    @Override
+    public void setPermissions(Set<PosixFilePermission> perms) throws IOException {
+        node.setPermissions(perms);
+    }
+
+    @Override
+    public void setGroup(GroupPrincipal group) throws IOException {
+        node.setGroup(group.getName());
+    }
+
+    int read(ByteBuffer dst, long position) {
+        lock.readLock().lock();
+        try {
+            if (position >= size) {
+                return -1;
+            }
+            int n = (int) Long.min(dst.remaining(), size - position);
+            int done = 0;
+            while (done < n) {
+                ByteBuffer chunk = slice(position + done, n - done);
+                done += chunk.remaining();
+                dst.put(chunk);
+            }
+            return n;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int write(ByteBuffer src, long position) {
+        lock.writeLock().lock();
+        try {
+            return writeLocked(src, position);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Write at the end of the file, read under the same lock so that concurrent appenders never overwrite each other.
+     * @return the end of the written bytes
+     */
+    long append(ByteBuffer src) {
+        lock.writeLock().lock();
+        try {
+            long position = size;
+            return position + writeLocked(src, position);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int writeLocked(ByteBuffer src, long position) {
+        int n = src.remaining();
+        long end = position + n;
+        while ((long) chunks.size() * CHUNK_SIZE < end) {
+            // new direct buffers are zeroed, which fills the gap when writing past the end
+            chunks.add(ByteBuffer.allocateDirect(CHUNK_SIZE));
+        }
+        int done = 0;
+        while (done < n) {
+            ByteBuffer chunk = slice(position + done, n - done);
+            ByteBuffer part = src.slice();
+            part.limit(chunk.remaining());
+            chunk.put(part);
+            src.position(src.position() + part.limit());
+            done += part.limit();
+        }
+        size = Long.max(size, end);
+        version = VERSIONS.incrementAndGet();
+        node.touch();
+        return n;
+    }
+
+    long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (position >= size) {
+                return 0;
+            }
+            long n = Long.min(count, size - position);
+            long done = 0;
+            while (done < n) {
+                ByteBuffer chunk = slice(position + done, (int) Long.min(n - done, CHUNK_SIZE));
+                int written = target.write(chunk);
+                done += written;
+                if (chunk.hasRemaining()) {
+                    // non-blocking target full
+                    break;
+                }
+            }
+            return done;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void truncate(long newSize) {
+        lock.writeLock().lock();
+        try {
+            if (newSize >= size) {
+                return;
+            }
+            int keep = (int) ((newSize + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            chunks.subList(keep, chunks.size()).clear();
+            int tail = (int) (newSize % CHUNK_SIZE);
+            if (tail > 0) {
+                // zero the end of the last chunk, so that growing the file again reads zeros there
+                ByteBuffer last = chunks.get(keep - 1).duplicate();
+                last.position(tail);
+                while (last.hasRemaining()) {
+                    last.put((byte) 0);
+                }
+            }
+            size = newSize;
+            version = VERSIONS.incrementAndGet();
+            node.touch();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return a view of the chunk holding {@code position}, limited to {@code max} bytes and to the end of the chunk
+     */
+    private ByteBuffer slice(long position, int max) {
+        ByteBuffer chunk = chunks.get((int) (position / CHUNK_SIZE)).duplicate();
+        int offset = (int) (position % CHUNK_SIZE);
+        chunk.position(offset);
+        chunk.limit(Integer.min(CHUNK_SIZE, offset + max));
+        return chunk;
+    }
+
+}
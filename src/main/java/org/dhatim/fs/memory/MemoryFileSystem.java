@@ -0,0 +1,86 @@
+package org.dhatim.fs.memory;
+
+import org.dhatim.fs.base.AbstractPrincipal;
+import org.dhatim.fs.base.AbstractVirtualFileSystemProvider;
+import org.dhatim.fs.virtual.SharedVirtualFileCache;
+import org.dhatim.fs.virtual.VirtualFile;
+import org.dhatim.fs.virtual.VirtualFileSystem;
+import org.dhatim.fs.virtual.VirtualUserPrincipalLookupService;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.attribute.GroupPrincipal;
+import java.nio.file.attribute.UserPrincipal;
+
+/**
+ * A filesystem holding its whole tree in memory, with full read and write support.
+ * It serves as a scratch area and as a reference backend: several filesystems (one per session, for example) can
+ * serve the same {@link MemoryDirectory tree}.
+ */
+public class MemoryFileSystem extends VirtualFileSystem {
+
+    private static final class MemoryUser extends AbstractPrincipal implements UserPrincipal {
+
+        private MemoryUser(String name) {
+            super(name);
+        }
+    }
+
+    private static final class MemoryGroup extends AbstractPrincipal implements GroupPrincipal {
+
+        private MemoryGroup(String name) {
+            super(name);
+        }
+    }
+
+    private static final class MemoryUserPrincipalLookupService extends VirtualUserPrincipalLookupService {
+
+        private static final MemoryUserPrincipalLookupService INSTANCE = new MemoryUserPrincipalLookupService();
+
+        @Override
+        public UserPrincipal lookupUserPrincipal(VirtualFile file) throws IOException {
+            MemoryNode node = MemoryNode.of(file);
+            return node == null ? null : new MemoryUser(node.owner());
+        }
+
+        @Override
+        public GroupPrincipal lookupGroupPrincipal(VirtualFile file) throws IOException {
+            MemoryNode node = MemoryNode.of(file);
+            return node == null ? null : new MemoryGroup(node.group());
+        }
+
+        @Override
+        public UserPrincipal lookupPrincipalByName(String name) throws IOException {
+            return new MemoryUser(name);
+        }
+
+        @Override
+        public GroupPrincipal lookupPrincipalByGroupName(String group) throws IOException {
+            return new MemoryGroup(group);
+        }
+    }
+
+    public MemoryFileSystem(AbstractVirtualFileSystemProvider fileSystemProvider, URI uri) {
+        this(fileSystemProvider, uri, new MemoryDirectory());
+    }
+
+    public MemoryFileSystem(AbstractVirtualFileSystemProvider fileSystemProvider, URI uri, MemoryDirectory root) {
+        super(fileSystemProvider, uri);
+        setRoot(root);
+    }
+
+    /**
+     * Serve a tree shared with other filesystems, through a view of their shared cache so that changes made through
+     * one of them are seen by all.
+     */
+    public MemoryFileSystem(AbstractVirtualFileSystemProvider fileSystemProvider, URI uri, MemoryDirectory root, SharedVirtualFileCache.View cache) {
+        super(fileSystemProvider, uri, cache);
+        setRoot(root);
+    }
+
+    @Override
+    public VirtualUserPrincipalLookupService getUserPrincipalLookupService() {
+        return MemoryUserPrincipalLookupService.INSTANCE;
+    }
+
+}
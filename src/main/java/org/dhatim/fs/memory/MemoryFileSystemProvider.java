@@ -0,0 +1,25 @@
+package org.dhatim.fs.memory;
+
+import org.dhatim.fs.base.AbstractVirtualFileSystem;
+import org.dhatim.fs.base.AbstractVirtualFileSystemProvider;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+
+/**
+ * Creates {@link MemoryFileSystem}s, each with its own empty tree.
+ */
+public class MemoryFileSystemProvider extends AbstractVirtualFileSystemProvider {
+
+    @Override
+    public String getScheme() {
+        return "memory";
+    }
+
+    @Override
+    protected AbstractVirtualFileSystem createFileSystem(URI uri, Map<String, ?> env) throws IOException {
+        return new MemoryFileSystem(this, uri);
+    }
+
+}
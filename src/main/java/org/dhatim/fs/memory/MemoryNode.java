@@ -0,0 +1,112 @@
+package org.dhatim.fs.memory;
+
+import org.dhatim.fs.virtual.VirtualFile;
+
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The state shared by the files and directories of a memory tree: their place in the tree and their attributes.
+ */
+final class MemoryNode {
+
+    private volatile MemoryDirectory parent;
+    private volatile String name;
+    private volatile FileTime lastModifiedTime;
+    private volatile FileTime lastAccessTime;
+    private volatile FileTime creationTime;
+    private volatile Set<PosixFilePermission> permissions;
+    private volatile String owner = "root";
+    private volatile String group = "root";
+
+    MemoryNode(MemoryDirectory parent, String name, Set<PosixFilePermission> permissions) {
+        this.parent = parent;
+        this.name = name;
+        this.permissions = permissions;
+        FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+        this.lastModifiedTime = now;
+        this.lastAccessTime = now;
+        this.creationTime = now;
+    }
+
+    static MemoryNode of(VirtualFile file) {
+        if (file instanceof MemoryFile) {
+            return ((MemoryFile) file).node();
+        } else if (file instanceof MemoryDirectory) {
+            return ((MemoryDirectory) file).node();
+        } else {
+            return null;
+        }
+    }
+
+    MemoryDirectory parent() {
+        return parent;
+    }
+
+    String name() {
+        return name;
+    }
+
+    /**
+     * Called once the node is linked under its new name; moves between directories hold the tree lock.
+     */
+    void relink(MemoryDirectory newParent, String newName) {
+        parent = newParent;
+        name = newName;
+    }
+
+    void touch() {
+        lastModifiedTime = FileTime.fromMillis(System.currentTimeMillis());
+    }
+
+    Optional<FileTime> lastModifiedTime() {
+        return Optional.of(lastModifiedTime);
+    }
+
+    Optional<FileTime> lastAccessTime() {
+        return Optional.of(lastAccessTime);
+    }
+
+    Optional<FileTime> creationTime() {
+        return Optional.of(creationTime);
+    }
+
+    void setTimes(FileTime lastModifiedTime, FileTime lastAccessTime, FileTime createTime) {
+        if (lastModifiedTime != null) {
+            this.lastModifiedTime = lastModifiedTime;
+        }
+        if (lastAccessTime != null) {
+            this.lastAccessTime = lastAccessTime;
+        }
+        if (createTime != null) {
+            this.creationTime = createTime;
+        }
+    }
+
+    Set<PosixFilePermission> permissions() {
+        return permissions;
+    }
+
+    void setPermissions(Set<PosixFilePermission> permissions) {
+        this.permissions = Set.copyOf(permissions);
+    }
+
+    String owner() {
+        return owner;
+    }
+
+    void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    String group() {
+        return group;
+    }
+
+    void setGroup(String group) {
+        this.group = group;
+    }
+
+}
@@ -55,6 +55,8 @@ public class BasicDirectoryStream<T, R> implements DirectoryStream<R> {
     @Override
     public void close() {
         closed = true;
+        // release what backs the stream, such as an open directory
+        stream.close();
     }
 
     private boolean filterEntry(R entry) {
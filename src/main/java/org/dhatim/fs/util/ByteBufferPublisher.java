@@ -0,0 +1,115 @@
+package org.dhatim.fs.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the content written to a byte channel to a single subscriber.
+ * Buffers are emitted on the thread that writes or requests, never on a dedicated one: writers fill the channel up to
+ * its capacity and block beyond, until the subscriber requests more.
+ */
+final class ByteBufferPublisher implements Flow.Publisher<ByteBuffer> {
+
+    private final FsByteChannel channel;
+    private final int chunkSize;
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger work = new AtomicInteger();
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private volatile Flow.Subscriber<? super ByteBuffer> subscriber;
+    private volatile boolean cancelled;
+    private boolean done;
+
+    ByteBufferPublisher(FsByteChannel channel, int chunkSize) {
+        this.channel = channel;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> s) {
+        if (!subscribed.compareAndSet(false, true)) {
+            s.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            s.onError(new IllegalStateException("upload already subscribed"));
+            return;
+        }
+        subscriber = s;
+        s.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    cancel();
+                    s.onError(new IllegalArgumentException("non-positive request: " + n));
+                    return;
+                }
+                demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n);
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                // fail pending and further writes
+                channel.discard();
+            }
+        });
+        drain();
+    }
+
+    /**
+     * Emit what the channel holds, as far as demand allows. Called after every write and request; only one caller
+     * emits at a time.
+     */
+    void drain() {
+        if (work.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super ByteBuffer> s = subscriber;
+            if (s != null && !done && !cancelled) {
+                while (demand.get() > 0) {
+                    ByteBuffer buffer = ByteBuffer.allocate(chunkSize);
+                    int n;
+                    try {
+                        n = channel.readAvailable(buffer);
+                    } catch (IOException e) {
+                        done = true;
+                        channel.discard();
+                        s.onError(e);
+                        break;
+                    }
+                    if (n > 0) {
+                        demand.decrementAndGet();
+                        buffer.flip();
+                        s.onNext(buffer);
+                    } else {
+                        if (n < 0) {
+                            done = true;
+                            s.onComplete();
+                        }
+                        break;
+                    }
+                }
+                if (!done && !cancelled && demand.get() == 0 && !channel.isOpen() && channel.getReadPos() == channel.getWritePos()) {
+                    // completion needs no demand
+                    done = true;
+                    channel.discard();
+                    s.onComplete();
+                }
+            }
+            missed = work.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+}
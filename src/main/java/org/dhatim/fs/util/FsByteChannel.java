@@ -1,7 +1,11 @@
 package org.dhatim.fs.util;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.util.concurrent.TimeUnit;
@@ -9,12 +13,20 @@ import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
 /**
  * A byte channel allowing a writer and a reader to produce and consume concurrently.
  * Based on the internal buffer size, operations are blocking until read or write capacity is available.
+ * With a spill capacity, writes exceeding the internal buffer go to a file of the
+ * {@link SpillDirectory#getDefault() spill directory} instead of blocking, until it holds that many bytes or the
+ * directory is full; the reader consumes the file after the buffer.
  */
 public class FsByteChannel implements WritableByteChannel, ReadableByteChannel {
 
+    private static final Logger LOG = LoggerFactory.getLogger(FsByteChannel.class);
+
     private boolean closed;
     private final byte[] transferBuffer;
     private final Lock lock = new ReentrantLock();
@@ -22,6 +34,16 @@ public class FsByteChannel implements WritableByteChannel, ReadableByteChannel {
     private final Condition canRead = lock.newCondition();
     private long writePos;
     private long readPos;
+    // positions in the transfer buffer, which lag behind the overall ones by what went to the spill file
+    private long bufferWritePos;
+    private long bufferReadPos;
+    private long spillCapacity;
+    private SpillDirectory.SpillFile spillFile;
+    private FileChannel spill;
+    private long spillWritePos;
+    private long spillReadPos;
+    // the spill directory was full: writes wait for the reader, as without spill capacity, until the file is drained
+    private boolean spillFull;
 
     public FsByteChannel(int capacity) {
         transferBuffer = new byte[capacity];
@@ -51,14 +73,46 @@ public class FsByteChannel implements WritableByteChannel, ReadableByteChannel {
         }
     }
 
+    /**
+     * Close the channel and drop what was not read yet, releasing the spill file. Called by the reader when it stops
+     * before the end of the content.
+     */
+    public void discard() {
+        lock.lock();
+        try {
+            close();
+            releaseSpill();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Let writes go to a temporary file of at most {@code capacity} bytes once the internal buffer is full, instead of
+     * waiting for the reader.
+     */
+    public void setSpillCapacity(long capacity) {
+        lock.lock();
+        try {
+            spillCapacity = capacity;
+            canWrite.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
     private int writeCapacity() {
-        if (writePos < readPos + transferBuffer.length) {
-            return (int) (readPos + transferBuffer.length - writePos);
+        if (bufferWritePos < bufferReadPos + transferBuffer.length) {
+            return (int) (bufferReadPos + transferBuffer.length - bufferWritePos);
         } else {
             return 0;
         }
     }
 
+    private long spillWriteCapacity() {
+        return spillFull ? 0 : spillCapacity - spillWritePos;
+    }
+
     @Override
     public int write(ByteBuffer src) throws IOException {
         lock.lock();
@@ -77,35 +131,71 @@ public class FsByteChannel implements WritableByteChannel, ReadableByteChannel {
     }
 
     private int doWrite(ByteBuffer src) throws IOException, InterruptedException {
-        // wait until we can write into transfer buffer
+        // wait until we can write into transfer buffer, or into the spill file once it has started to be used
         int capacity;
-        while ((capacity = writeCapacity()) == 0 && !closed) {
+        while (!closed) {
+            if (spillReadPos == spillWritePos && (capacity = writeCapacity()) > 0) {
+                return writeBuffer(src, capacity);
+            }
+            if (spillWriteCapacity() > 0) {
+                return writeSpill(src);
+            }
             canWrite.await(1, TimeUnit.SECONDS);
         }
-        if (closed) {
-            throw new IOException("cannot write to a closed channel");
-        }
+        throw new IOException("cannot write to a closed channel");
+    }
 
+    private int writeBuffer(ByteBuffer src, int capacity) {
         // write what we can and bump write position
         int toWrite = Integer.min(src.remaining(), capacity);
         int l = transferBuffer.length;
-        int pos = (int) (writePos % l);
+        int pos = (int) (bufferWritePos % l);
         if (pos + toWrite <= l) {
             src.get(transferBuffer, pos, toWrite);
         } else {
             src.get(transferBuffer, pos, l - pos);
             src.get(transferBuffer, 0, toWrite - (l - pos));
         }
+        bufferWritePos += toWrite;
         writePos += toWrite;
-        if (readCapacity() > 0) {
-            canRead.signal();
+        canRead.signal();
+        return toWrite;
+    }
+
+    private int writeSpill(ByteBuffer src) throws IOException {
+        if (spill == null) {
+            spillFile = SpillDirectory.getDefault().acquire();
+            try {
+                spill = FileChannel.open(spillFile.getPath(), READ, WRITE);
+            } catch (IOException e) {
+                spillFile.close();
+                spillFile = null;
+                throw e;
+            }
+        }
+        ByteBuffer slice = src.slice();
+        slice.limit((int) Long.min(slice.remaining(), spillWriteCapacity()));
+        try {
+            spillFile.reserve(spillWritePos + slice.remaining());
+        } catch (IOException e) {
+            LOG.debug("{}, waiting for the reader", e.getMessage());
+            spillFull = true;
+            return 0;
         }
+        int toWrite = 0;
+        while (slice.hasRemaining()) {
+            toWrite += spill.write(slice, spillWritePos + toWrite);
+        }
+        src.position(src.position() + toWrite);
+        spillWritePos += toWrite;
+        writePos += toWrite;
+        canRead.signal();
         return toWrite;
     }
 
     private int readCapacity() {
         if (readPos < writePos) {
-            return (int) (writePos - readPos);
+            return (int) Long.min(writePos - readPos, Integer.MAX_VALUE);
         } else {
             return 0;
         }
@@ -124,6 +214,23 @@ public class FsByteChannel implements WritableByteChannel, ReadableByteChannel {
         }
     }
 
+    /**
+     * Read what is available without waiting.
+     * @return the number of bytes read, possibly 0, or -1 if the channel is closed and drained
+     */
+    public int readAvailable(ByteBuffer dst) throws IOException {
+        lock.lock();
+        try {
+            int capacity = readCapacity();
+            if (capacity == 0) {
+                return closed ? drained() : 0;
+            }
+            return dst.remaining() == 0 ? 0 : transferTo(dst);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     private int doRead(ByteBuffer dst) throws IOException, InterruptedException {
         if (dst.remaining() == 0) {
             return 0;
@@ -137,26 +244,70 @@ public class FsByteChannel implements WritableByteChannel, ReadableByteChannel {
 
         // nothing to read and channel closed: EOF
         if (closed && capacity == 0) {
-            return -1;
+            return drained();
         }
 
-        // Read what we can and bump read position
-        int toRead = Integer.min(dst.remaining(), capacity);
-        int l = transferBuffer.length;
-        int pos = (int) (readPos % l);
-        if (pos + toRead <= l) {
-            dst.put(transferBuffer, pos, toRead);
+        return transferTo(dst);
+    }
+
+    private int drained() {
+        releaseSpill();
+        return -1;
+    }
+
+    private int transferTo(ByteBuffer dst) throws IOException {
+        // the transfer buffer holds the oldest bytes, the spill file the ones written after it was full
+        int toRead;
+        int capacity = (int) (bufferWritePos - bufferReadPos);
+        if (capacity > 0) {
+            toRead = Integer.min(dst.remaining(), capacity);
+            int l = transferBuffer.length;
+            int pos = (int) (bufferReadPos % l);
+            if (pos + toRead <= l) {
+                dst.put(transferBuffer, pos, toRead);
+            } else {
+                dst.put(transferBuffer, pos, l - pos);
+                dst.put(transferBuffer, 0, toRead - (l - pos));
+            }
+            bufferReadPos += toRead;
         } else {
-            dst.put(transferBuffer, pos, l - pos);
-            dst.put(transferBuffer, 0, toRead - (l - pos));
+            ByteBuffer slice = dst.slice();
+            slice.limit((int) Long.min(slice.remaining(), spillWritePos - spillReadPos));
+            toRead = spill.read(slice, spillReadPos);
+            dst.position(dst.position() + toRead);
+            spillReadPos += toRead;
+            if (spillReadPos == spillWritePos) {
+                // drained: reuse the file from its start and write to the transfer buffer again
+                spillReadPos = 0;
+                spillWritePos = 0;
+                spillFull = false;
+            }
         }
         readPos += toRead;
-        if (writeCapacity() > 0) {
-            canWrite.signal();
-        }
+        canWrite.signal();
         return toRead;
     }
 
+    private void releaseSpill() {
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException e) {
+                LOG.warn("cannot close spill file", e);
+            }
+            spillFile.close();
+            spillFile = null;
+            spill = null;
+            spillCapacity = 0;
+            spillReadPos = 0;
+            spillWritePos = 0;
+            spillFull = false;
+        }
+    }
+
+    public int capacity() {
+        return transferBuffer.length;
+    }
     public long getReadPos() {
         lock.lock();
         try {
@@ -0,0 +1,138 @@
+package org.dhatim.fs.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A read-only file channel over content held in memory.
+ */
+public class FsFileChannelForBytes extends FileChannel {
+
+    private final ByteBuffer content;
+    private volatile long position;
+
+    public FsFileChannelForBytes(byte[] content) {
+        this(ByteBuffer.wrap(content));
+    }
+
+    public FsFileChannelForBytes(ByteBuffer content) {
+        this.content = content.asReadOnlyBuffer();
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        int n = read(dst, position);
+        if (n > 0) {
+            position += n;
+        }
+        return n;
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int n = read(dsts[i]);
+            if (n < 0) {
+                return total == 0 ? -1 : total;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        if (position >= content.limit()) {
+            return -1;
+        }
+        ByteBuffer src = content.duplicate();
+        src.position((int) position);
+        int n = Integer.min(src.remaining(), dst.remaining());
+        src.limit(src.position() + n);
+        dst.put(src);
+        return n;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        throw new UnsupportedOperationException("write");
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        throw new UnsupportedOperationException("write");
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) throws IOException {
+        throw new UnsupportedOperationException("write");
+    }
+
+    @Override
+    public long position() throws IOException {
+        return position;
+    }
+
+    @Override
+    public FileChannel position(long newPosition) throws IOException {
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        return content.limit();
+    }
+
+    @Override
+    public FileChannel truncate(long size) throws IOException {
+        throw new UnsupportedOperationException("truncate");
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+        // do nothing
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        if (position >= content.limit()) {
+            return 0;
+        }
+        ByteBuffer src = content.duplicate();
+        src.position((int) position);
+        src.limit((int) Long.min(content.limit(), position + count));
+        return target.write(src);
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+        throw new UnsupportedOperationException("transferFrom");
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+        throw new UnsupportedOperationException("map");
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+        throw new UnsupportedOperationException("lock");
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+        throw new UnsupportedOperationException("tryLock");
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+        // nothing to release
+    }
+}
@@ -12,9 +12,16 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Flow;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -26,67 +33,583 @@ public class FsFileChannelForRead extends FileChannel {
 
     private static final Logger LOG = LoggerFactory.getLogger(FsFileChannelForRead.class);
 
-    private final Path temp;
-    private final FileChannel writeChannel;
-    private final FileChannel readChannel;
+    /**
+     * The temp file holding produced content, shared by all the channels reading it.
+     * It is given back to the {@link SpillDirectory#getDefault() spill directory} when the last of them is closed.
+     */
+    private static final class Spill {
 
-    private final Lock lock = new ReentrantLock();
-    private final Condition canRead = lock.newCondition();
+        private final SpillDirectory.SpillFile file;
+        private final Path temp;
+        private final FileChannel writeChannel;
+        private final FileChannel readChannel;
 
-    public FsFileChannelForRead() throws IOException {
-        temp = Files.createTempFile("sftp-read", ".tmp");
-        writeChannel = FileChannel.open(temp, WRITE);
-        readChannel = FileChannel.open(temp, READ);
-    }
+        private final Lock lock = new ReentrantLock();
+        private final Condition canRead = lock.newCondition();
+        private final List<Runnable> releaseCallbacks = new ArrayList<>();
+        private final List<ThrowingConsumer<Path>> completionCallbacks = new ArrayList<>();
+        private int references = 1;
+        private boolean complete;
+        private volatile int waitingReaders;
 
-    public Thread transferTo(String threadName, ThrowingConsumer<OutputStream> writer) {
-        Thread t = new Thread(() -> {
-            try (OutputStream os = new DelegateOutputStream(Channels.newOutputStream(writeChannel)) {
-                @Override
-                protected void bytesWritten(int n) throws IOException {
-                    if (readChannel.position() == writeChannel.size() - n) {
-                        // reader may be blocked: signal it there are bytes to read
-                        lock.lock();
-                        try {
-                            canRead.signalAll();
-                        } finally {
-                            lock.unlock();
-                        }
+        // offset in the content of the first byte of the temp file
+        private volatile long base;
+        // offset in the content where the producer stops, -1 for the end of the content
+        private volatile long end = -1;
+        // final size of the content when declared before it is produced, -1 otherwise
+        private volatile long expectedSize = -1;
+        // furthest offset in the temp file read so far, and the publisher subscriber waiting for it to advance
+        private volatile long consumed;
+        // furthest offset in the temp file a reader is waiting for, which may be past the read-ahead after a seek
+        private final AtomicLong wanted = new AtomicLong();
+        private volatile SpillSubscriber subscriber;
+        // why the producer stopped before the end of the content, rethrown to the readers once they reach that point
+        private volatile IOException failure;
+        private String pendingThreadName;
+        private volatile ThrowingRangeConsumer<WritableByteChannel> pendingWriter;
+
+        private Spill() throws IOException {
+            file = SpillDirectory.getDefault().acquire();
+            temp = file.getPath();
+            try {
+                writeChannel = FileChannel.open(temp, WRITE);
+                readChannel = FileChannel.open(temp, READ);
+            } catch (IOException e) {
+                file.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Writes the buffers of a publisher to the spill, requesting one more each time as long as the produced content
+         * is less than the read-ahead ahead of the readers, or than the offset a reader waits for; past it, the next
+         * request is made by the reader catching up.
+         */
+        private final class SpillSubscriber implements Flow.Subscriber<ByteBuffer> {
+
+            private final long readAhead;
+            private final AtomicBoolean waitingForReaders = new AtomicBoolean();
+            private volatile Flow.Subscription subscription;
+            private volatile long produced;
+
+            private SpillSubscriber(long readAhead) {
+                this.readAhead = readAhead;
+            }
+
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription = s;
+                s.request(1);
+            }
+
+            @Override
+            public void onNext(ByteBuffer buffer) {
+                try {
+                    while (buffer.hasRemaining()) {
+                        file.reserve(writeChannel.position() + buffer.remaining());
+                        produced += writeChannel.write(buffer);
                     }
+                } catch (IOException e) {
+                    subscription.cancel();
+                    onError(e);
+                    return;
                 }
-            }) {
-                writer.accept(os);
-            } catch (IOException e) {
-                LOG.error("cannot transfer to channel", e);
+                signalReaders();
+                waitingForReaders.set(true);
+                readersAdvanced();
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                LOG.error("cannot transfer to channel", t);
+                failure = t instanceof IOException ? (IOException) t : new IOException(t);
+                finish();
+            }
+
+            @Override
+            public void onComplete() {
+                if (finish()) {
+                    complete();
+                }
+            }
+
+            private boolean finish() {
+                try {
+                    writeChannel.close();
+                    return true;
+                } catch (IOException e) {
+                    LOG.error("cannot close channel", e);
+                    return false;
+                } finally {
+                    // readers waiting for more bytes must now see the end of the content
+                    signalReaders();
+                }
+            }
+
+            private void readersAdvanced() {
+                long target = Long.max(consumed + readAhead, wanted.get());
+                if (waitingForReaders.get() && produced < target && waitingForReaders.compareAndSet(true, false)) {
+                    subscription.request(1);
+                }
+            }
+
+            private void cancel() {
+                Flow.Subscription s = subscription;
+                if (s != null) {
+                    s.cancel();
+                }
+            }
+        }
+
+        private Thread start(String threadName, long offset, long length, ThrowingRangeConsumer<WritableByteChannel> writer) {
+            lock.lock();
+            try {
+                base = offset;
+                end = length < 0 ? -1 : offset + length;
+            } finally {
+                lock.unlock();
+            }
+            return startProducer(threadName, offset, length, writer);
+        }
+
+        private Thread startProducer(String threadName, long offset, long length, ThrowingRangeConsumer<WritableByteChannel> writer) {
+            Thread t = new Thread(() -> {
+                boolean success = false;
+                WritableByteChannel out = new WritableByteChannel() {
+                    @Override
+                    public int write(ByteBuffer src) throws IOException {
+                        file.reserve(writeChannel.position() + src.remaining());
+                        int n = writeChannel.write(src);
+                        // readers may be blocked: signal them there are bytes to read
+                        signalReaders();
+                        return n;
+                    }
+
+                    @Override
+                    public boolean isOpen() {
+                        return writeChannel.isOpen();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        writeChannel.close();
+                    }
+                };
+                try {
+                    writer.accept(offset, length, out);
+                    success = true;
+                } catch (IOException e) {
+                    if (isReleased()) {
+                        // all the readers are gone, or a seek restarted the range elsewhere: nothing to report
+                        LOG.debug("producer of {} stopped after release", temp, e);
+                    } else {
+                        LOG.error("cannot transfer to channel", e);
+                        failure = e;
+                    }
+                } finally {
+                    // the failure is recorded before closing, so that readers seeing the end of the content see it
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                        LOG.error("cannot close channel", e);
+                        success = false;
+                    }
+                    // readers waiting for more bytes must now see the end of the content
+                    signalReaders();
+                }
+                if (success && offset == 0 && length < 0) {
+                    complete();
+                }
+            }, threadName);
+            t.start();
+            return t;
+        }
+
+        private void subscribe(Flow.Publisher<ByteBuffer> publisher, long readAhead) {
+            SpillSubscriber s = new SpillSubscriber(readAhead);
+            subscriber = s;
+            publisher.subscribe(s);
+        }
+
+        private void readTo(long offset) {
+            SpillSubscriber s = subscriber;
+            if (s != null && offset > consumed) {
+                consumed = offset;
+                s.readersAdvanced();
+            }
+        }
+
+        private void startLater(String threadName, ThrowingRangeConsumer<WritableByteChannel> writer) {
+            lock.lock();
+            try {
+                pendingThreadName = threadName;
+                pendingWriter = writer;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Start a lazy producer at the position of the first access. Content shared by several channels always
+         * starts at 0.
+         */
+        private void startPending(long position) {
+            String threadName;
+            ThrowingRangeConsumer<WritableByteChannel> writer;
+            long offset;
+            lock.lock();
+            try {
+                if (pendingWriter == null) {
+                    return;
+                }
+                threadName = pendingThreadName;
+                writer = pendingWriter;
+                offset = references > 1 ? 0 : position;
+                // set with the decision, so that retain() never shares a range not starting at 0
+                base = offset;
+                pendingThreadName = null;
+                pendingWriter = null;
+            } finally {
+                lock.unlock();
+            }
+            startProducer(threadName, offset, -1, writer);
+        }
+
+        private boolean isPending() {
+            return pendingWriter != null;
+        }
+
+        /**
+         * Whether a read at the given offset of the content is better served by a new producer starting there: the
+         * offset is before the start of this one, past its end, or too far ahead of what it has produced so far.
+         */
+        private boolean isOutOfRange(long position, long distance) throws IOException {
+            if (position < base) {
+                return true;
+            }
+            long stop = end;
+            if (stop >= 0 && position >= stop) {
+                return true;
+            }
+            return writeChannel.isOpen() && position > base + readChannel.size() + distance;
+        }
+
+        private void signalReaders() {
+            if (waitingReaders == 0) {
+                return;
+            }
+            lock.lock();
+            try {
+                canRead.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean retain() {
+            lock.lock();
+            try {
+                if (references == 0 || base != 0) {
+                    return false;
+                }
+                references++;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean isReleased() {
+            lock.lock();
+            try {
+                return references == 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean onRelease(Runnable callback) {
+            lock.lock();
+            try {
+                if (references == 0) {
+                    return false;
+                }
+                releaseCallbacks.add(callback);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean onComplete(ThrowingConsumer<Path> callback) {
+            lock.lock();
+            try {
+                if (references == 0) {
+                    return false;
+                }
+                if (!complete) {
+                    completionCallbacks.add(callback);
+                    return true;
+                }
+            } finally {
+                lock.unlock();
+            }
+            runCompletionCallback(callback);
+            return true;
+        }
+
+        private void complete() {
+            List<ThrowingConsumer<Path>> callbacks;
+            lock.lock();
+            try {
+                complete = true;
+                callbacks = new ArrayList<>(completionCallbacks);
+                completionCallbacks.clear();
+            } finally {
+                lock.unlock();
+            }
+            callbacks.forEach(this::runCompletionCallback);
+        }
+
+        private void runCompletionCallback(ThrowingConsumer<Path> callback) {
+            // keep the content alive while the callback reads it
+            if (!retain()) {
+                return;
+            }
+            try {
+                callback.accept(temp);
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("completion callback failed for {}", temp, e);
+            } finally {
+                try {
+                    release();
+                } catch (IOException e) {
+                    LOG.warn("cannot release {}", temp, e);
+                }
+            }
+        }
+
+        private void release() throws IOException {
+            List<Runnable> callbacks;
+            lock.lock();
+            try {
+                if (--references > 0) {
+                    return;
+                }
+                if (subscriber != null) {
+                    subscriber.cancel();
+                }
+                writeChannel.close();
+                readChannel.close();
+                canRead.signalAll();
+                file.close();
+                callbacks = new ArrayList<>(releaseCallbacks);
+                releaseCallbacks.clear();
+            } finally {
+                lock.unlock();
+            }
+            callbacks.forEach(Runnable::run);
+        }
+
+        private void ensureRead(long position, int n) throws IOException {
+            SpillSubscriber s = subscriber;
+            long end = position + n;
+            if (s != null && wanted.getAndAccumulate(end, Long::max) < end) {
+                // a read or seek past the read-ahead: demand must reach it, as readers only advance once it is read
+                s.readersAdvanced();
+            }
+            lock.lock();
+            // announce the wait before checking the size, so that the producer cannot miss it
+            waitingReaders++;
+            try {
+                // a read ending exactly at the bytes written so far can proceed
+                while (position + n > readChannel.size() && writeChannel.isOpen()) {
+                    canRead.await(1, TimeUnit.SECONDS);
+                }
+                IOException failed = failure;
+                if (failed != null && position + (n > 0 ? 1 : 0) > readChannel.size()) {
+                    // nothing left before the point where the producer failed: this is not the end of the content
+                    throw new IOException("content of " + temp + " is truncated", failed);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException(ex);
+            } finally {
+                waitingReaders--;
+                lock.unlock();
             }
-        }, threadName);
-        t.start();
-        return t;
+        }
+    }
+
+    private volatile Spill spill;
+    private volatile long position;
+    private String rangeThreadName;
+    private ThrowingRangeConsumer<WritableByteChannel> rangeWriter;
+    // the ranges started by the channels sharing the content, by offset, to bound the new ones
+    private final ConcurrentSkipListMap<Long, Spill> ranges;
+    private volatile long restartDistance = 8L * 1024 * 1024;
+    // sequential reads are served from this buffer, filled with what the producer has written so far
+    private final Object readAheadLock = new Object();
+    private volatile int readAheadSize = 256 * 1024;
+    private ByteBuffer readAhead;
+    private long readAheadOffset;
+    private long nextReadOffset = -1;
+
+    public FsFileChannelForRead() throws IOException {
+        this(new Spill(), new ConcurrentSkipListMap<>());
+    }
+
+    private FsFileChannelForRead(Spill spill, ConcurrentSkipListMap<Long, Spill> ranges) {
+        this.spill = spill;
+        this.ranges = ranges;
+    }
+
+    public Thread transferTo(String threadName, ThrowingConsumer<OutputStream> writer) {
+        return spill.start(threadName, 0, -1, (offset, length, out) -> writer.accept(Channels.newOutputStream(out)));
+    }
+
+    /**
+     * Like {@link #transferTo(String, ThrowingConsumer)}, giving the producer a channel: backends producing
+     * {@link ByteBuffer}s write them without intermediate copies.
+     */
+    public Thread transferToChannel(String threadName, ThrowingConsumer<WritableByteChannel> writer) {
+        return spill.start(threadName, 0, -1, (offset, length, out) -> writer.accept(out));
+    }
+
+    /**
+     * Produce the content from a publisher of buffers, without a dedicated thread: buffers are written to the spill
+     * as they are emitted, and at most {@code readAhead} bytes are requested ahead of the readers.
+     */
+    public FsFileChannelForRead transferFromPublisher(Flow.Publisher<ByteBuffer> publisher, long readAhead) {
+        spill.subscribe(publisher, readAhead);
+        return this;
+    }
+
+    /**
+     * Produce the content from the position of the first read rather than from the beginning: the writer is called
+     * with that offset and must write the content from there, up to the given length or to the end when it is -1.
+     * A resumed download then skips what the client already has. Reading before the start of the produced range, past
+     * its end, or further than {@link #setRangeRestartDistance(long) the restart distance} ahead of what it has
+     * produced starts a new producer at the new position, private to the channel when the content is shared. Its
+     * length then stops it where a range started by another channel sharing the content begins, so that the handles
+     * of a segmented download each produce their own segment.
+     */
+    public FsFileChannelForRead transferRangeTo(String threadName, ThrowingRangeConsumer<OutputStream> writer) {
+        return transferRangeToChannel(threadName, (offset, length, out) -> writer.accept(offset, length, Channels.newOutputStream(out)));
+    }
+
+    /**
+     * Like {@link #transferRangeTo(String, ThrowingRangeConsumer)}, giving the producer a channel.
+     */
+    public FsFileChannelForRead transferRangeToChannel(String threadName, ThrowingRangeConsumer<WritableByteChannel> writer) {
+        rangeThreadName = threadName;
+        rangeWriter = writer;
+        spill.startLater(threadName, writer);
+        return this;
+    }
+
+    /**
+     * Declare the final size of the content before it is fully produced. {@link #size()} then reports it instead of
+     * the bytes produced so far, so that clients can pipeline reads over the whole file, and reads at or past it
+     * return end-of-stream without waiting. The producer may call it at any time, from any thread.
+     */
+    public void setExpectedSize(long size) {
+        spill.expectedSize = size;
+    }
+
+    public boolean hasExpectedSize() {
+        return spill.expectedSize >= 0;
+    }
+
+    /**
+     * Set how far ahead of the content produced so far a read starts a new range producer at its position instead of
+     * waiting for the current one, for channels produced by {@link #transferRangeTo(String, ThrowingRangeConsumer)}.
+     */
+    public FsFileChannelForRead setRangeRestartDistance(long distance) {
+        restartDistance = distance;
+        return this;
+    }
+
+    /**
+     * Set the size of the buffer serving sequential reads, or 0 to disable read-ahead.
+     * Once reads are detected to follow each other, each miss fills the buffer with everything available at once,
+     * and the following reads are served from memory.
+     */
+    public FsFileChannelForRead setReadAhead(int size) {
+        synchronized (readAheadLock) {
+            readAheadSize = size;
+            readAhead = null;
+        }
+        return this;
+    }
+
+    /**
+     * Open another channel on the same content, with its own position, so that concurrent downloads of the same
+     * file share a single producer.
+     * @return the new channel, or nothing if the content was already released by all its readers or does not start at
+     * the beginning of the file
+     */
+    public Optional<FsFileChannelForRead> share() {
+        if (!spill.retain()) {
+            return Optional.empty();
+        }
+        FsFileChannelForRead shared = new FsFileChannelForRead(spill, ranges);
+        shared.readAheadSize = readAheadSize;
+        shared.rangeThreadName = rangeThreadName;
+        shared.rangeWriter = rangeWriter;
+        shared.restartDistance = restartDistance;
+        return Optional.of(shared);
+    }
+
+    /**
+     * Register a callback run once the content is released, when the last channel sharing it is closed.
+     * @return false if the content was already released
+     */
+    public boolean whenReleased(Runnable callback) {
+        return spill.onRelease(callback);
+    }
+
+    /**
+     * Register a callback run once the producer has successfully written the whole content, with the file holding
+     * it. The file must not be modified and is only valid during the callback.
+     * @return false if the content was already released
+     */
+    public boolean whenComplete(ThrowingConsumer<Path> callback) {
+        return spill.onComplete(callback);
     }
 
     @Override
     protected void implCloseChannel() throws IOException {
-        lock.lock();
-        try {
-            writeChannel.close();
-            readChannel.close();
-            canRead.signalAll();
-            Files.delete(temp.toAbsolutePath());
-        } finally {
-            lock.unlock();
-        }
+        spill.release();
     }
 
     @Override
     public int read(ByteBuffer dst) throws IOException {
-        ensureRead(dst.remaining());
-        return readChannel.read(dst);
+        int n = read(dst, position);
+        if (n > 0) {
+            position += n;
+        }
+        return n;
     }
 
     @Override
     public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
-        ensureRead(length);
-        return readChannel.read(dsts, offset, length);
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            if (!dsts[i].hasRemaining()) {
+                continue;
+            }
+            int expected = dsts[i].remaining();
+            int n = read(dsts[i]);
+            if (n < 0) {
+                return total == 0 ? -1 : total;
+            }
+            total += n;
+            if (n < expected) {
+                break;
+            }
+        }
+        return total;
     }
 
     @Override
@@ -101,19 +624,22 @@ public class FsFileChannelForRead extends FileChannel {
 
     @Override
     public long position() throws IOException {
-        return readChannel.position();
+        return position;
     }
 
     @Override
     public FileChannel position(long newPosition) throws IOException {
-        ensureRead(newPosition, 0);
-        readChannel.position(newPosition);
+        Spill current = spillAt(newPosition);
+        current.ensureRead(newPosition - current.base, 0);
+        position = newPosition;
         return this;
     }
 
     @Override
     public long size() throws IOException {
-        return readChannel.size();
+        Spill current = spill;
+        long expected = current.expectedSize;
+        return expected >= 0 ? expected : current.base + current.readChannel.size();
     }
 
     @Override
@@ -138,8 +664,118 @@ public class FsFileChannelForRead extends FileChannel {
 
     @Override
     public int read(ByteBuffer dst, long position) throws IOException {
-        ensureRead(position, dst.remaining());
-        return readChannel.read(dst, position);
+        int wanted = dst.remaining();
+        if (readAheadSize <= 0 || wanted == 0) {
+            return readFromSpill(dst, position, wanted);
+        }
+        synchronized (readAheadLock) {
+            boolean sequential = position == nextReadOffset;
+            int total = isBuffered(position) ? copyBuffered(dst, position) : 0;
+            if (dst.hasRemaining() && (total > 0 || sequential) && dst.remaining() < readAheadSize) {
+                int n = fillReadAhead(position + total, dst.remaining());
+                if (n > 0) {
+                    total += copyBuffered(dst, position + total);
+                } else if (total == 0) {
+                    return n;
+                }
+            } else if (total == 0) {
+                total = readFromSpill(dst, position, wanted);
+            }
+            if (total > 0) {
+                nextReadOffset = position + total;
+            }
+            return total;
+        }
+    }
+
+    private boolean isBuffered(long position) {
+        return readAhead != null && position >= readAheadOffset && position < readAheadOffset + readAhead.limit();
+    }
+
+    private int copyBuffered(ByteBuffer dst, long position) {
+        ByteBuffer src = readAhead.duplicate();
+        src.position((int) (position - readAheadOffset));
+        int n = Integer.min(src.remaining(), dst.remaining());
+        src.limit(src.position() + n);
+        dst.put(src);
+        return n;
+    }
+
+    private int fillReadAhead(long position, int wanted) throws IOException {
+        if (readAhead == null) {
+            readAhead = ByteBuffer.allocate(readAheadSize);
+        }
+        readAhead.clear();
+        readAheadOffset = position;
+        // wait for the bytes asked for only, but take everything already produced
+        int n = readFromSpill(readAhead, position, wanted);
+        readAhead.flip();
+        return n;
+    }
+
+    private int readFromSpill(ByteBuffer dst, long position, int wanted) throws IOException {
+        long expected = spill.expectedSize;
+        if (expected >= 0) {
+            if (position >= expected) {
+                return -1;
+            }
+            wanted = (int) Long.min(wanted, expected - position);
+        }
+        Spill current = spillAt(position);
+        current.ensureRead(position - current.base, wanted);
+        int n = current.readChannel.read(dst, position - current.base);
+        if (n > 0) {
+            current.readTo(position - current.base + n);
+        }
+        return n;
+    }
+
+    private Spill spillAt(long position) throws IOException {
+        Spill current = spill;
+        if (current.isPending()) {
+            current.startPending(position);
+        }
+        if (rangeWriter != null && isRestartable(current, position)) {
+            current = restartAt(position);
+        }
+        return current;
+    }
+
+    private boolean isRestartable(Spill current, long position) throws IOException {
+        long expected = current.expectedSize;
+        return (expected < 0 || position < expected) && current.isOutOfRange(position, restartDistance);
+    }
+
+    /**
+     * Move the channel to a new producer starting at the given position, leaving the content it read to the other
+     * channels sharing it.
+     */
+    private synchronized Spill restartAt(long position) throws IOException {
+        Spill current = spill;
+        if (!isRestartable(current, position)) {
+            return current;
+        }
+        Spill restarted = new Spill();
+        restarted.expectedSize = current.expectedSize;
+        restarted.start(rangeThreadName, position, rangeLength(position, restarted), rangeWriter);
+        spill = restarted;
+        current.release();
+        return restarted;
+    }
+
+    /**
+     * Record a range starting at the given offset.
+     * @return its length, up to the next range started by a channel sharing the content, or -1 to the end
+     */
+    private long rangeLength(long offset, Spill range) {
+        ranges.put(offset, range);
+        for (Map.Entry<Long, Spill> next = ranges.higherEntry(offset); next != null; next = ranges.higherEntry(next.getKey())) {
+            if (!next.getValue().isReleased()) {
+                return next.getKey() - offset;
+            }
+            ranges.remove(next.getKey(), next.getValue());
+        }
+        return -1;
     }
 
     @Override
@@ -161,22 +797,4 @@ public class FsFileChannelForRead extends FileChannel {
     public FileLock tryLock(long position, long size, boolean shared) throws IOException {
         throw new UnsupportedOperationException("tryLock");
     }
-
-    private void ensureRead(long position, int n) throws IOException {
-        lock.lock();
-        try {
-            while (position + n >= readChannel.size() && writeChannel.isOpen()) {
-                canRead.await(1, TimeUnit.SECONDS);
-            }
-        } catch (InterruptedException ex) {
-            Thread.currentThread().interrupt();
-            throw new IOException(ex);
-        } finally {
-            lock.unlock();
-        }
-    }
-
-    private void ensureRead(int n) throws IOException {
-        ensureRead(readChannel.position(), n);
-    }
 }
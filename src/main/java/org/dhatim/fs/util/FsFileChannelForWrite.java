@@ -8,38 +8,108 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.*;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
 
 public class FsFileChannelForWrite extends FileChannel {
 
     private static final Logger LOG = LoggerFactory.getLogger(FsFileChannelForWrite.class);
     private final FsByteChannel channel;
     private final Thread thread;
+    private final ByteBufferPublisher publisher;
+    // small writes are gathered here before being handed to the consumer
+    private final ByteBuffer pending;
+    private final long maxDelayNanos;
+    private long pendingSince;
+    private volatile boolean waitForDrain = true;
 
     public FsFileChannelForWrite() {
         this(1024 * 1024);
     }
 
     public FsFileChannelForWrite(int capacity) {
-        this(new FsByteChannel(capacity), null);
+        this(capacity, Integer.min(capacity / 4, 64 * 1024), 100, TimeUnit.MILLISECONDS);
     }
 
-    private FsFileChannelForWrite(FsByteChannel channel, Thread thread) {
+    /**
+     * @param coalesceSize writes smaller than this are gathered until this size is reached, or 0 to disable it
+     * @param maxDelay gathered writes older than this are handed to the consumer on the next write; no timer hands
+     *                 them over in between, so a writer going quiet keeps them until it writes, forces or closes
+     */
+    public FsFileChannelForWrite(int capacity, int coalesceSize, long maxDelay, TimeUnit unit) {
+        this(new FsByteChannel(capacity), null, null, coalesceSize, unit.toNanos(maxDelay));
+    }
+
+    private FsFileChannelForWrite(FsByteChannel channel, Thread thread, ByteBufferPublisher publisher, int coalesceSize, long maxDelayNanos) {
         this.channel = channel;
         this.thread = thread;
+        this.publisher = publisher;
+        this.pending = coalesceSize > 0 ? ByteBuffer.allocate(coalesceSize) : null;
+        this.maxDelayNanos = maxDelayNanos;
+    }
+
+    private FsFileChannelForWrite with(Thread thread, ByteBufferPublisher publisher) {
+        FsFileChannelForWrite result = new FsFileChannelForWrite(channel, thread, publisher, pending == null ? 0 : pending.capacity(), maxDelayNanos);
+        result.waitForDrain = waitForDrain;
+        return result;
+    }
+
+    /**
+     * Let the upload go on at line speed when the reader falls behind: once the pipe is full, up to {@code maxSize}
+     * more bytes are written to a temporary file that the reader consumes afterwards.
+     */
+    public FsFileChannelForWrite spillTo(long maxSize) {
+        channel.setSpillCapacity(maxSize);
+        return this;
+    }
+
+    /**
+     * Choose whether {@link #close()} waits for the reader to consume the whole upload, which is the default.
+     * Otherwise the client sees the upload complete as soon as it is buffered, and the reader finishes in the
+     * background; its failures are then only logged.
+     */
+    public FsFileChannelForWrite setWaitForDrain(boolean waitForDrain) {
+        this.waitForDrain = waitForDrain;
+        return this;
     }
 
     public FsFileChannelForWrite transferFrom(String threadName, ThrowingConsumer<InputStream> reader) {
-        Thread thread = new Thread(() -> {
-            try (InputStream is = Channels.newInputStream(channel)) {
+        return transferFromChannel(threadName, in -> {
+            try (InputStream is = Channels.newInputStream(in)) {
                 reader.accept(is);
+            }
+        });
+    }
+
+    /**
+     * Like {@link #transferFrom(String, ThrowingConsumer)}, giving the consumer a channel: backends consuming
+     * {@link ByteBuffer}s read them without intermediate copies.
+     */
+    public FsFileChannelForWrite transferFromChannel(String threadName, ThrowingConsumer<ReadableByteChannel> reader) {
+        Thread thread = new Thread(() -> {
+            try {
+                reader.accept(channel);
             } catch (IOException e) {
                 LOG.error("cannot transfer from channel", e);
             } finally {
-                channel.close();
+                // drop what the reader left, with the spill file
+                channel.discard();
             }
         }, threadName);
         thread.start();
-        return new FsFileChannelForWrite(channel, thread);
+        return with(thread, null);
+    }
+
+    /**
+     * Expose the upload as a publisher of buffers, handed to the reader before this method returns.
+     * No thread is dedicated to the transfer: buffers are emitted on the thread writing to this channel or on the one
+     * requesting them, and writes block once the channel capacity is buffered without demand.
+     * The publisher accepts a single subscriber and completes when this channel is closed.
+     */
+    public FsFileChannelForWrite transferFromPublisher(ThrowingConsumer<Flow.Publisher<ByteBuffer>> reader) throws IOException {
+        ByteBufferPublisher upload = new ByteBufferPublisher(channel, Integer.min(channel.capacity(), 64 * 1024));
+        reader.accept(upload);
+        return with(null, upload);
     }
 
     @Override
@@ -54,7 +124,58 @@ public class FsFileChannelForWrite extends FileChannel {
 
     @Override
     public int write(ByteBuffer src) throws IOException {
-        return channel.write(src);
+        if (pending == null) {
+            return writeThrough(src);
+        }
+        int result = src.remaining();
+        if (pending.position() == 0 && result >= pending.capacity()) {
+            return writeThrough(src);
+        }
+        if (pending.position() == 0) {
+            pendingSince = System.nanoTime();
+        }
+        while (src.hasRemaining()) {
+            int n = Integer.min(src.remaining(), pending.remaining());
+            ByteBuffer slice = src.slice();
+            slice.limit(n);
+            pending.put(slice);
+            src.position(src.position() + n);
+            if (!pending.hasRemaining()) {
+                flush();
+                pendingSince = System.nanoTime();
+            }
+        }
+        if (pending.position() > 0 && System.nanoTime() - pendingSince >= maxDelayNanos) {
+            flush();
+        }
+        return result;
+    }
+
+    private void flush() throws IOException {
+        if (pending != null && pending.position() > 0) {
+            pending.flip();
+            writeThrough(pending);
+            pending.clear();
+        }
+    }
+
+    private int writeThrough(ByteBuffer src) throws IOException {
+        if (publisher == null) {
+            return channel.write(src);
+        }
+        // write no more than the capacity at once, so that a blocked write only waits for new demand
+        int result = 0;
+        int capacity = channel.capacity();
+        while (src.hasRemaining()) {
+            ByteBuffer slice = src.slice();
+            int n = Integer.min(slice.remaining(), capacity);
+            slice.limit(n);
+            channel.write(slice);
+            src.position(src.position() + n);
+            result += n;
+            publisher.drain();
+        }
+        return result;
     }
 
     @Override
@@ -64,7 +185,7 @@ public class FsFileChannelForWrite extends FileChannel {
 
     @Override
     public long position() throws IOException {
-        return channel.getWritePos();
+        return size();
     }
 
     @Override
@@ -78,7 +199,8 @@ public class FsFileChannelForWrite extends FileChannel {
 
     @Override
     public long size() throws IOException {
-        return channel.getWritePos();
+        // gathered writes count as written, so that positional checks do not force a flush
+        return channel.getWritePos() + (pending == null ? 0 : pending.position());
     }
 
     @Override
@@ -88,7 +210,7 @@ public class FsFileChannelForWrite extends FileChannel {
 
     @Override
     public void force(boolean metaData) throws IOException {
-        // do nothing
+        flush();
     }
 
     @Override
@@ -128,8 +250,23 @@ public class FsFileChannelForWrite extends FileChannel {
 
     @Override
     protected void implCloseChannel() throws IOException {
-        channel.close();
-        if (thread != null) {
+        try {
+            flush();
+        } finally {
+            try {
+                channel.close();
+            } finally {
+                // release the reader even when the last gathered writes could not be handed over
+                awaitReader();
+            }
+        }
+    }
+
+    private void awaitReader() throws IOException {
+        if (publisher != null) {
+            publisher.drain();
+        }
+        if (thread != null && waitForDrain) {
             try {
                 thread.join();
             } catch (InterruptedException e) {
@@ -0,0 +1,198 @@
+package org.dhatim.fs.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * The directory holding the temporary files of transfers, with a cap on their total size.
+ * Released files are truncated and kept in a pool for the next transfers, instead of being deleted and created again.
+ * A dedicated directory (on a tmpfs, for example) is cleaned of the files left by a previous process when opened.
+ */
+public final class SpillDirectory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SpillDirectory.class);
+    private static final String PREFIX = "sftp-spill-";
+    private static final String SUFFIX = ".tmp";
+
+    private static volatile SpillDirectory defaultDirectory;
+
+    /**
+     * A temporary file of a spill directory. Bytes must be {@link #reserve(long) reserved} before being written.
+     */
+    public final class SpillFile implements Closeable {
+
+        private final Path path;
+        private long size;
+        private boolean closed;
+
+        private SpillFile(Path path) {
+            this.path = path;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * Account for the file growing up to {@code end} bytes.
+         * @throws IOException if the directory would exceed its maximum size
+         */
+        public synchronized void reserve(long end) throws IOException {
+            if (end <= size) {
+                return;
+            }
+            long n = end - size;
+            if (bytesInUse.addAndGet(n) > maxSize) {
+                bytesInUse.addAndGet(-n);
+                throw new IOException("spill directory " + directory + " is full");
+            }
+            size = end;
+        }
+
+        /**
+         * Give the file back to the directory. Channels opened on it must be closed first.
+         */
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            bytesInUse.addAndGet(-size);
+            filesInUse.decrementAndGet();
+            release(path);
+        }
+    }
+
+    private final Path directory;
+    private final long maxSize;
+    private final int poolSize;
+    private final Deque<Path> pool = new ArrayDeque<>();
+    private final AtomicLong bytesInUse = new AtomicLong();
+    private final AtomicInteger filesInUse = new AtomicInteger();
+
+    /**
+     * Open a dedicated directory, deleting the spill files found in it.
+     * @param maxSize the maximum total size of the files in use
+     * @param poolSize the number of files created upfront and kept for reuse
+     */
+    public SpillDirectory(Path directory, long maxSize, int poolSize) throws IOException {
+        this(directory, maxSize, poolSize, true);
+    }
+
+    private SpillDirectory(Path directory, long maxSize, int poolSize, boolean dedicated) throws IOException {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.poolSize = poolSize;
+        Files.createDirectories(directory);
+        if (dedicated) {
+            deleteOrphans();
+        }
+        for (int i = 0; i < poolSize; i++) {
+            pool.add(Files.createTempFile(directory, PREFIX, SUFFIX));
+        }
+    }
+
+    /**
+     * The directory used by transfers, by default the system temporary directory without size cap nor pool.
+     */
+    public static SpillDirectory getDefault() {
+        SpillDirectory result = defaultDirectory;
+        if (result == null) {
+            synchronized (SpillDirectory.class) {
+                result = defaultDirectory;
+                if (result == null) {
+                    try {
+                        result = new SpillDirectory(Paths.get(System.getProperty("java.io.tmpdir")), Long.MAX_VALUE, 0, false);
+                    } catch (IOException e) {
+                        throw new IllegalStateException("cannot open temporary directory", e);
+                    }
+                    defaultDirectory = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    public static void setDefault(SpillDirectory directory) {
+        defaultDirectory = directory;
+    }
+
+    public SpillFile acquire() throws IOException {
+        Path path;
+        synchronized (pool) {
+            path = pool.poll();
+        }
+        if (path == null) {
+            path = Files.createTempFile(directory, PREFIX, SUFFIX);
+        }
+        filesInUse.incrementAndGet();
+        return new SpillFile(path);
+    }
+
+    private void release(Path path) {
+        try {
+            synchronized (pool) {
+                if (pool.size() < poolSize) {
+                    try (FileChannel channel = FileChannel.open(path, WRITE)) {
+                        channel.truncate(0);
+                    }
+                    pool.push(path);
+                    return;
+                }
+            }
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOG.warn("cannot release {}", path, e);
+        }
+    }
+
+    private void deleteOrphans() throws IOException {
+        try (DirectoryStream<Path> orphans = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path orphan : orphans) {
+                try {
+                    Files.deleteIfExists(orphan);
+                } catch (IOException e) {
+                    LOG.warn("cannot delete {}", orphan, e);
+                }
+            }
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public long getBytesInUse() {
+        return bytesInUse.get();
+    }
+
+    public int getFilesInUse() {
+        return filesInUse.get();
+    }
+
+    public int getPooledFiles() {
+        synchronized (pool) {
+            return pool.size();
+        }
+    }
+
+}
@@ -0,0 +1,13 @@
+package org.dhatim.fs.util;
+
+import java.io.IOException;
+
+public interface ThrowingRangeConsumer<T> {
+
+    /**
+     * @param offset the offset in the content of the first byte to write
+     * @param length the number of bytes to write, or -1 to write up to the end of the content
+     */
+    void accept(long offset, long length, T t) throws IOException;
+
+}
@@ -0,0 +1,9 @@
+package org.dhatim.fs.util;
+
+import java.io.IOException;
+
+public interface ThrowingSupplier<T> {
+
+    T get() throws IOException;
+
+}
@@ -0,0 +1,105 @@
+package org.dhatim.fs.virtual;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import java.io.IOException;
+import java.nio.file.attribute.GroupPrincipal;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A lookup service caching the principals returned by another one.
+ * Principals are cached per file (by identity) and per name, for a bounded time, and are interned so that files
+ * sharing an owner share a single principal instance.
+ */
+public class CachingUserPrincipalLookupService extends VirtualUserPrincipalLookupService {
+
+    @FunctionalInterface
+    private interface Lookup<K, V> {
+        V lookup(K key) throws IOException;
+    }
+
+    private final VirtualUserPrincipalLookupService delegate;
+    private final Interner<UserPrincipal> users = Interners.newWeakInterner();
+    private final Interner<GroupPrincipal> groups = Interners.newWeakInterner();
+    private final Cache<VirtualFile, UserPrincipal> userByFile;
+    private final Cache<VirtualFile, GroupPrincipal> groupByFile;
+    private final Cache<String, UserPrincipal> userByName;
+    private final Cache<String, GroupPrincipal> groupByName;
+
+    public CachingUserPrincipalLookupService(VirtualUserPrincipalLookupService delegate) {
+        this(delegate, 10_000, 5, TimeUnit.MINUTES);
+    }
+
+    public CachingUserPrincipalLookupService(VirtualUserPrincipalLookupService delegate, long maximumSize, long expireAfterWrite, TimeUnit unit) {
+        this.delegate = delegate;
+        userByFile = newCache(maximumSize, expireAfterWrite, unit).weakKeys().build();
+        groupByFile = newCache(maximumSize, expireAfterWrite, unit).weakKeys().build();
+        userByName = newCache(maximumSize, expireAfterWrite, unit).build();
+        groupByName = newCache(maximumSize, expireAfterWrite, unit).build();
+    }
+
+    @Override
+    public UserPrincipal lookupUserPrincipal(VirtualFile file) throws IOException {
+        return lookup(userByFile, users, file, delegate::lookupUserPrincipal);
+    }
+
+    @Override
+    public GroupPrincipal lookupGroupPrincipal(VirtualFile file) throws IOException {
+        return lookup(groupByFile, groups, file, delegate::lookupGroupPrincipal);
+    }
+
+    @Override
+    public UserPrincipal lookupPrincipalByName(String name) throws IOException {
+        return lookup(userByName, users, name, delegate::lookupPrincipalByName);
+    }
+
+    @Override
+    public GroupPrincipal lookupPrincipalByGroupName(String group) throws IOException {
+        return lookup(groupByName, groups, group, delegate::lookupPrincipalByGroupName);
+    }
+
+    /**
+     * Forget the principals cached for a file, after its owner or group changed.
+     */
+    public void invalidate(VirtualFile file) {
+        userByFile.invalidate(file);
+        groupByFile.invalidate(file);
+    }
+
+    public void invalidateAll() {
+        userByFile.invalidateAll();
+        groupByFile.invalidateAll();
+        userByName.invalidateAll();
+        groupByName.invalidateAll();
+    }
+
+    public CacheStats userStats() {
+        return userByFile.stats().plus(userByName.stats());
+    }
+
+    public CacheStats groupStats() {
+        return groupByFile.stats().plus(groupByName.stats());
+    }
+
+    private static CacheBuilder<Object, Object> newCache(long maximumSize, long expireAfterWrite, TimeUnit unit) {
+        return CacheBuilder.newBuilder().maximumSize(maximumSize).expireAfterWrite(expireAfterWrite, unit).recordStats();
+    }
+
+    private static <K, V> V lookup(Cache<K, V> cache, Interner<V> interner, K key, Lookup<K, V> lookup) throws IOException {
+        V principal = cache.getIfPresent(key);
+        if (principal == null) {
+            principal = lookup.lookup(key);
+            if (principal != null) {
+                principal = interner.intern(principal);
+                cache.put(key, principal);
+            }
+        }
+        return principal;
+    }
+
+}
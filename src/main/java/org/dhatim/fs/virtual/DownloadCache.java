@@ -0,0 +1,186 @@
+package org.dhatim.fs.virtual;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import org.dhatim.fs.util.FsFileChannelForBytes;
+import org.dhatim.fs.util.FsFileChannelForRead;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Optional;
+
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Keeps the content produced by downloads of versioned files, so that unchanged files are served again without
+ * calling the backend.
+ * Small files are kept in memory and larger ones in a spill directory; both are bounded in bytes and evicted least
+ * recently used first. Entries are keyed by tenant, path and {@link VirtualFile#getVersion() version}: a new version
+ * is a miss and the old one ages out.
+ */
+public final class DownloadCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DownloadCache.class);
+    private static final String PREFIX = "sftp-cache-";
+    private static final String SUFFIX = ".tmp";
+
+    private static final class Key {
+
+        private final Object tenant;
+        private final String path;
+        private final String version;
+
+        private Key(Object tenant, String path, String version) {
+            this.tenant = tenant;
+            this.path = path;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return tenant.equals(that.tenant) && path.equals(that.path) && version.equals(that.version);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(tenant, path, version);
+        }
+    }
+
+    private final int maxInMemorySize;
+    private final Path directory;
+    private final Cache<Key, byte[]> memory;
+    private final Cache<Key, Path> disk;
+
+    /**
+     * @param maxMemory maximum bytes kept in memory
+     * @param maxInMemorySize files up to this size are kept in memory, larger ones on disk
+     * @param directory where larger files are kept; files left there by a previous run are deleted
+     * @param maxDisk maximum bytes kept on disk
+     */
+    public DownloadCache(long maxMemory, int maxInMemorySize, Path directory, long maxDisk) throws IOException {
+        this.maxInMemorySize = maxInMemorySize;
+        this.directory = directory;
+        Files.createDirectories(directory);
+        deleteOrphans(directory);
+        memory = CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .maximumWeight(maxMemory)
+                .weigher((Key key, byte[] content) -> content.length)
+                .recordStats()
+                .build();
+        disk = CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .maximumWeight(maxDisk)
+                .weigher((Key key, Path file) -> weigh(file))
+                .removalListener((RemovalListener<Key, Path>) notification -> delete(notification.getValue()))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @return a channel on the cached content of the current version of the file, if any
+     */
+    Optional<FileChannel> open(Object tenant, String path, VirtualFile file) throws IOException {
+        Optional<String> version = file.getVersion();
+        if (!version.isPresent()) {
+            return Optional.empty();
+        }
+        Key key = new Key(tenant, path, version.get());
+        byte[] content = memory.getIfPresent(key);
+        if (content != null) {
+            return Optional.of(new FsFileChannelForBytes(content));
+        }
+        Path cached = disk.getIfPresent(key);
+        if (cached != null) {
+            try {
+                return Optional.of(FileChannel.open(cached, READ));
+            } catch (NoSuchFileException e) {
+                // evicted in between
+                disk.invalidate(key);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Keep the content read through the channel once it is fully produced.
+     */
+    void capture(Object tenant, String path, VirtualFile file, FileChannel channel) {
+        Optional<String> version = file.getVersion();
+        if (!version.isPresent() || !(channel instanceof FsFileChannelForRead)) {
+            return;
+        }
+        Key key = new Key(tenant, path, version.get());
+        ((FsFileChannelForRead) channel).whenComplete(content -> put(key, content));
+    }
+
+    private void put(Key key, Path content) throws IOException {
+        if (memory.getIfPresent(key) != null || disk.getIfPresent(key) != null) {
+            return;
+        }
+        long size = Files.size(content);
+        if (size <= maxInMemorySize) {
+            memory.put(key, Files.readAllBytes(content));
+        } else {
+            Path copy = Files.createTempFile(directory, PREFIX, SUFFIX);
+            Files.copy(content, copy, REPLACE_EXISTING);
+            disk.put(key, copy);
+        }
+    }
+
+    public void invalidateAll() {
+        memory.invalidateAll();
+        disk.invalidateAll();
+    }
+
+    public CacheStats memoryStats() {
+        return memory.stats();
+    }
+
+    public CacheStats diskStats() {
+        return disk.stats();
+    }
+
+    private static int weigh(Path file) {
+        try {
+            return (int) Long.min(Files.size(file), Integer.MAX_VALUE);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.warn("cannot delete cached download {}", file, e);
+        }
+    }
+
+    private static void deleteOrphans(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                delete(file);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+package org.dhatim.fs.virtual;
+
+import org.dhatim.fs.util.FsFileChannelForRead;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares a single producer between concurrent downloads of the same file.
+ * While a {@link FsFileChannelForRead} opened for a path and {@link VirtualFile#getVersion() version} is still open,
+ * further opens of that version get a {@link FsFileChannelForRead#share() shared channel} reading the same content
+ * with their own position, instead of calling {@link VirtualFile#open(Set)} again.
+ * An instance can be shared by all the filesystems of a provider, keyed by tenant like {@link SharedVirtualFileCache}.
+ */
+public final class DownloadCoalescer {
+
+    private static final class Key {
+
+        private final Object tenant;
+        private final String path;
+        private final String version;
+
+        private Key(Object tenant, String path, String version) {
+            this.tenant = tenant;
+            this.path = path;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return tenant.equals(that.tenant) && path.equals(that.path) && version.equals(that.version);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(tenant, path, version);
+        }
+    }
+
+    private final ConcurrentHashMap<Key, CompletableFuture<FsFileChannelForRead>> downloads = new ConcurrentHashMap<>();
+
+    /**
+     * Open a file for reading, sharing an in-flight download of the same version when there is one.
+     * Files without a version are always opened.
+     */
+    FileChannel open(Object tenant, String path, VirtualFile file, Set<? extends OpenOption> options) throws IOException {
+        Optional<String> version = file.getVersion();
+        if (!version.isPresent()) {
+            return file.open(options);
+        }
+        Key key = new Key(tenant, path, version.get());
+        while (true) {
+            CompletableFuture<FsFileChannelForRead> opening = new CompletableFuture<>();
+            CompletableFuture<FsFileChannelForRead> existing = downloads.putIfAbsent(key, opening);
+            if (existing == null) {
+                return openFirst(key, file, options, opening);
+            }
+            FsFileChannelForRead origin;
+            try {
+                origin = existing.join();
+            } catch (CompletionException e) {
+                // the opener failed: try to open ourselves
+                downloads.remove(key, existing);
+                continue;
+            }
+            if (origin == null) {
+                // content cannot be shared
+                return file.open(options);
+            }
+            Optional<FsFileChannelForRead> shared = origin.share();
+            if (shared.isPresent()) {
+                return shared.get();
+            }
+            // all the readers closed in between
+            downloads.remove(key, existing);
+        }
+    }
+
+    private FileChannel openFirst(Key key, VirtualFile file, Set<? extends OpenOption> options, CompletableFuture<FsFileChannelForRead> opening) throws IOException {
+        FileChannel channel;
+        try {
+            channel = file.open(options);
+        } catch (IOException | RuntimeException e) {
+            downloads.remove(key, opening);
+            opening.completeExceptionally(e);
+            throw e;
+        }
+        if (channel instanceof FsFileChannelForRead) {
+            FsFileChannelForRead origin = (FsFileChannelForRead) channel;
+            origin.whenReleased(() -> downloads.remove(key, opening));
+            opening.complete(origin);
+        } else {
+            downloads.remove(key, opening);
+            opening.complete(null);
+        }
+        return channel;
+    }
+
+    public int size() {
+        return downloads.size();
+    }
+
+}
@@ -0,0 +1,71 @@
+package org.dhatim.fs.virtual;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.Objects;
+
+/**
+ * Keeps the hashes computed over the content of versioned files, so that verifying an unchanged file again does not
+ * read it. Entries are keyed by tenant, path, {@link VirtualFile#getVersion() version} and algorithm: a new version is
+ * a miss and the old one ages out.
+ */
+public final class HashCache {
+
+    private static final class Key {
+
+        private final Object tenant;
+        private final String path;
+        private final String version;
+        private final String algorithm;
+
+        private Key(Object tenant, String path, String version, String algorithm) {
+            this.tenant = tenant;
+            this.path = path;
+            this.version = version;
+            this.algorithm = algorithm;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return tenant.equals(that.tenant) && path.equals(that.path) && version.equals(that.version) && algorithm.equals(that.algorithm);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(tenant, path, version, algorithm);
+        }
+    }
+
+    private final Cache<Key, byte[]> hashes;
+
+    public HashCache(long maximumSize) {
+        hashes = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+    }
+
+    byte[] get(Object tenant, String path, String version, String algorithm) {
+        byte[] hash = hashes.getIfPresent(new Key(tenant, path, version, algorithm));
+        return hash == null ? null : hash.clone();
+    }
+
+    void put(Object tenant, String path, String version, String algorithm, byte[] hash) {
+        hashes.put(new Key(tenant, path, version, algorithm), hash.clone());
+    }
+
+    public CacheStats stats() {
+        return hashes.stats();
+    }
+
+    public void invalidateAll() {
+        hashes.invalidateAll();
+    }
+
+}
@@ -0,0 +1,128 @@
+package org.dhatim.fs.virtual;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Base class for directories holding their children in memory.
+ * Children are kept in an immutable index replaced on every update (copy-on-write): {@link #find(String)} is a hash
+ * lookup, {@link #getChildren()} streams the children sorted by name and neither of them takes a lock.
+ * Updates are serialized and cost a copy of the index, which suits directories that are read much more often than
+ * they are modified.
+ */
+public abstract class IndexedVirtualDirectory implements VirtualDirectory {
+
+    private static final class Index {
+
+        private static final Index EMPTY = new Index(new HashMap<>(), new String[0], new VirtualFile[0]);
+
+        private final Map<String, VirtualFile> byName;
+        private final String[] names;
+        private final VirtualFile[] children;
+
+        private Index(Map<String, VirtualFile> byName, String[] names, VirtualFile[] children) {
+            this.byName = byName;
+            this.names = names;
+            this.children = children;
+        }
+
+        private static Index of(Map<String, VirtualFile> byName) {
+            String[] names = byName.keySet().toArray(new String[0]);
+            Arrays.sort(names);
+            VirtualFile[] children = new VirtualFile[names.length];
+            for (int i = 0; i < names.length; i++) {
+                children[i] = byName.get(names[i]);
+            }
+            return new Index(byName, names, children);
+        }
+    }
+
+    private final Object updateLock = new Object();
+    private volatile Index index = Index.EMPTY;
+
+    @Override
+    public Optional<VirtualFile> find(String name) {
+        return Optional.ofNullable(index.byName.get(name));
+    }
+
+    @Override
+    public Stream<VirtualFile> getChildren() {
+        return Arrays.stream(index.children);
+    }
+
+    @Override
+    public Stream<VirtualFile> getChildren(VirtualNameFilter filter) {
+        Index current = index;
+        String prefix = filter.getLiteralPrefix();
+        int from = 0;
+        int to = current.names.length;
+        if (!prefix.isEmpty()) {
+            // names are sorted: only scan the range sharing the literal prefix of the pattern
+            from = lowerBound(current.names, prefix);
+            to = lowerBound(current.names, prefix + Character.MAX_VALUE);
+        }
+        return IntStream.range(from, to)
+                .filter(i -> filter.test(current.names[i]))
+                .mapToObj(i -> current.children[i]);
+    }
+
+    public int getChildCount() {
+        return index.names.length;
+    }
+
+    /**
+     * Add a child, replacing any child with the same name.
+     * @return the replaced child, if any
+     */
+    protected Optional<VirtualFile> putChild(VirtualFile child) {
+        synchronized (updateLock) {
+            Map<String, VirtualFile> byName = new HashMap<>(index.byName);
+            VirtualFile previous = byName.put(child.getName(), child);
+            index = Index.of(byName);
+            return Optional.ofNullable(previous);
+        }
+    }
+
+    protected void putChildren(Collection<? extends VirtualFile> children) {
+        synchronized (updateLock) {
+            Map<String, VirtualFile> byName = new HashMap<>(index.byName);
+            for (VirtualFile child : children) {
+                byName.put(child.getName(), child);
+            }
+            index = Index.of(byName);
+        }
+    }
+
+    /**
+     * Remove the child with the given name.
+     * @return the removed child, if any
+     */
+    protected Optional<VirtualFile> removeChild(String name) {
+        synchronized (updateLock) {
+            if (!index.byName.containsKey(name)) {
+                return Optional.empty();
+            }
+            Map<String, VirtualFile> byName = new HashMap<>(index.byName);
+            VirtualFile previous = byName.remove(name);
+            index = Index.of(byName);
+            return Optional.of(previous);
+        }
+    }
+
+    protected void clearChildren() {
+        synchronized (updateLock) {
+            index = Index.EMPTY;
+        }
+    }
+
+    private static int lowerBound(String[] names, String key) {
+        int i = Arrays.binarySearch(names, key);
+        return i >= 0 ? i : -i - 1;
+    }
+
+}
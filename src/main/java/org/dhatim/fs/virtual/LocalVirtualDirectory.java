@@ -0,0 +1,200 @@
+package org.dhatim.fs.virtual;
+
+import org.dhatim.fs.base.VirtualPath;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A directory of the local disk mounted in a virtual tree, either as the root of a {@link VirtualFileSystem} or as a
+ * child of any other virtual directory (pass it as parent).
+ * Files created in it are opened natively, children are created, deleted and renamed on the local filesystem, and
+ * glob filters are evaluated by it.
+ * Symbolic links are followed as long as they stay inside the mounted directory: files are accessed through their
+ * real path, and links leading outside of it, or nowhere, are neither listed nor found nor written through.
+ */
+public class LocalVirtualDirectory extends LocalVirtualFile implements VirtualDirectory {
+
+    private final VirtualDirectory mountParent;
+    // real path of the mounted directory, which every file served must be below
+    private final Path mountRoot;
+
+    /**
+     * Mount a local directory.
+     * @param parent the virtual directory holding it, or null for a root
+     * @throws IOException if the directory does not exist
+     */
+    public LocalVirtualDirectory(VirtualDirectory parent, Path path) throws IOException {
+        this(parent, nameOf(path), path.toRealPath());
+    }
+
+    private LocalVirtualDirectory(VirtualDirectory parent, String name, Path realPath) {
+        super(null, name, realPath);
+        this.mountParent = parent;
+        this.mountRoot = realPath;
+    }
+
+    private LocalVirtualDirectory(LocalVirtualDirectory parent, String name, Path realPath) {
+        super(parent, name, realPath);
+        this.mountParent = parent;
+        this.mountRoot = parent.mountRoot;
+    }
+
+    @Override
+    public VirtualDirectory getParent() {
+        return mountParent;
+    }
+
+    @Override
+    public Optional<VirtualFile> find(String name) {
+        if (!isChildName(name)) {
+            return Optional.empty();
+        }
+        return wrap(getPath().resolve(name));
+    }
+
+    @Override
+    public Stream<VirtualFile> getChildren() {
+        try {
+            return Files.list(getPath()).map(this::wrap).flatMap(Optional::stream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Stream<VirtualFile> getChildren(VirtualNameFilter filter) {
+        Optional<String> glob = filter.getGlob();
+        if (!glob.isPresent()) {
+            return VirtualDirectory.super.getChildren(filter);
+        }
+        DirectoryStream<Path> children;
+        try {
+            children = Files.newDirectoryStream(getPath(), glob.get());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(children.iterator(), Spliterator.DISTINCT), false)
+                .onClose(() -> {
+                    try {
+                        children.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .map(this::wrap)
+                .flatMap(Optional::stream);
+    }
+
+    @Override
+    public FileChannel createFile(VirtualPath path, Set<? extends OpenOption> options) throws IOException {
+        Path file = writableChild(path.getFileName().toString());
+        return FileChannel.open(file, options);
+    }
+
+    @Override
+    public VirtualDirectory createDirectory(String name) throws IOException {
+        Path directory = Files.createDirectory(writableChild(name));
+        return new LocalVirtualDirectory(this, name, directory.toRealPath());
+    }
+
+    /**
+     * Delete a child; a link leading outside of the mounted directory, or nowhere, is not found.
+     */
+    @Override
+    public void delete(String name) throws IOException {
+        Files.delete(existingChild(name));
+    }
+
+    /**
+     * Move a child with a rename of the local filesystem, which is atomic. Moves to a directory of another filesystem
+     * are not supported: the virtual filesystem then copies files, unless an atomic move was requested.
+     * @return the file at its new path
+     */
+    @Override
+    public VirtualFile move(String name, VirtualDirectory target, String newName, boolean replace) throws IOException {
+        if (!(target instanceof LocalVirtualDirectory)) {
+            throw new UnsupportedOperationException("move to another backend");
+        }
+        LocalVirtualDirectory destination = (LocalVirtualDirectory) target;
+        Path source = existingChild(name);
+        Path moved = destination.writableChild(newName);
+        // an atomic rename replaces the target whatever the options: refuse it first
+        if (!replace && Files.exists(moved, LinkOption.NOFOLLOW_LINKS)) {
+            throw new FileAlreadyExistsException(moved.toString());
+        }
+        try {
+            Files.move(source, moved, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            throw new UnsupportedOperationException("move to another filesystem", e);
+        }
+        return destination.wrap(moved).orElseThrow(() -> new NoSuchFileException(moved.toString()));
+    }
+
+    private static boolean isChildName(String name) {
+        return !name.isEmpty() && !name.equals(".") && !name.equals("..") && name.indexOf('/') < 0;
+    }
+
+    /**
+     * @return the path of a child to write, refusing links that lead outside of the mounted directory or nowhere
+     */
+    private Path writableChild(String name) throws IOException {
+        if (!isChildName(name)) {
+            throw new FileSystemException(name, null, "invalid name");
+        }
+        Path file = getPath().resolve(name);
+        if (Files.isSymbolicLink(file) && !realPath(file).isPresent()) {
+            throw new AccessDeniedException(file.toString(), null, "link outside of the mounted directory");
+        }
+        return file;
+    }
+
+    /**
+     * @return the path of a child that {@link #find(String)} finds
+     */
+    private Path existingChild(String name) throws IOException {
+        Path file = getPath().resolve(name);
+        if (!isChildName(name) || !realPath(file).isPresent()) {
+            throw new NoSuchFileException(file.toString());
+        }
+        return file;
+    }
+
+    /**
+     * @return the file at the real path of a child, or nothing if it does not exist or is outside of the mount
+     */
+    private Optional<VirtualFile> wrap(Path child) {
+        String name = nameOf(child);
+        return realPath(child).map(real -> Files.isDirectory(real) ? new LocalVirtualDirectory(this, name, real) : new LocalVirtualFile(this, name, real));
+    }
+
+    private Optional<Path> realPath(Path child) {
+        Path real;
+        try {
+            real = child.toRealPath();
+        } catch (IOException e) {
+            // missing, or a dangling link
+            return Optional.empty();
+        }
+        return real.startsWith(mountRoot) ? Optional.of(real) : Optional.empty();
+    }
+
+}
@@ -0,0 +1,139 @@
+package org.dhatim.fs.virtual;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.GroupPrincipal;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.UserPrincipal;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * A file of the local disk mounted in a virtual tree.
+ * {@link #open(Set)} returns the native channel of the file, so that reads and writes are positional and go through
+ * the page cache, without the pipes used for generated content.
+ * Owners and groups are set by name, looked up in the filesystem holding the file.
+ */
+public class LocalVirtualFile implements VirtualFile {
+
+    private final LocalVirtualDirectory parent;
+    private final String name;
+    private final Path path;
+
+    public LocalVirtualFile(LocalVirtualDirectory parent, Path path) {
+        this(parent, nameOf(path), path);
+    }
+
+    /**
+     * @param name the name of the file in its directory, which differs from the one of its path for a symbolic link
+     */
+    LocalVirtualFile(LocalVirtualDirectory parent, String name, Path path) {
+        this.parent = parent;
+        this.name = name;
+        this.path = path;
+    }
+
+    static String nameOf(Path path) {
+        Path name = path.getFileName();
+        return name == null ? "" : name.toString();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public VirtualDirectory getParent() {
+        return parent;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public FileChannel open(Set<? extends OpenOption> options) throws IOException {
+        return FileChannel.open(path, options);
+    }
+
+    @Override
+    public Optional<FileTime> getLastModifiedTime() {
+        return Optional.of(attributes().lastModifiedTime());
+    }
+
+    @Override
+    public Optional<FileTime> getCreationTime() {
+        return Optional.of(attributes().creationTime());
+    }
+
+    @Override
+    public Optional<FileTime> getLastAccessTime() {
+        return Optional.of(attributes().lastAccessTime());
+    }
+
+    @Override
+    public Set<PosixFilePermission> getPermissions() {
+        try {
+            return Files.getPosixFilePermissions(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public long getSize() {
+        return attributes().size();
+    }
+
+    /**
+     * @return the key of the file, when the filesystem has one, with its full-precision modification time and size:
+     * a file replaced by another, or rewritten within the same millisecond, gets a new version
+     */
+    @Override
+    public Optional<String> getVersion() {
+        BasicFileAttributes attributes = attributes();
+        Object key = attributes.fileKey();
+        return Optional.of((key == null ? "" : key + "-") + attributes.lastModifiedTime() + "-" + attributes.size());
+    }
+
+    @Override
+    public void setOwner(UserPrincipal owner) throws IOException {
+        UserPrincipalLookupService lookup = path.getFileSystem().getUserPrincipalLookupService();
+        Files.setOwner(path, lookup.lookupPrincipalByName(owner.getName()));
+    }
+
+    @Override
+    public void setTimes(FileTime lastModifiedTime, FileTime lastAccessTime, FileTime createTime) throws IOException {
+        Files.getFileAttributeView(path, BasicFileAttributeView.class).setTimes(lastModifiedTime, lastAccessTime, createTime);
+    }
+
+    @Override
+    public void setPermissions(Set<PosixFilePermission> perms) throws IOException {
+        Files.setPosixFilePermissions(path, perms);
+    }
+
+    @Override
+    public void setGroup(GroupPrincipal group) throws IOException {
+        UserPrincipalLookupService lookup = path.getFileSystem().getUserPrincipalLookupService();
+        Files.getFileAttributeView(path, PosixFileAttributeView.class).setGroup(lookup.lookupPrincipalByGroupName(group.getName()));
+    }
+
+    private BasicFileAttributes attributes() {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package org.dhatim.fs.virtual;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalesces concurrent lookups in the same directory into a single {@link VirtualDirectory#findAll} call.
+ * A lookup in a directory without a call in flight is sent at once, so that lookups made one after another are never
+ * delayed. Lookups arriving while a call is in flight join a follow-up batch, sent as one call when the previous one is
+ * over.
+ */
+final class LookupBatcher {
+
+    private static final class Batch {
+
+        // names and sent are guarded by the entry of the directory in the batches map
+        private final Set<String> names = new HashSet<>();
+        private boolean sent;
+        private Batch previous;
+        private final CompletableFuture<Map<String, VirtualFile>> result = new CompletableFuture<>();
+    }
+
+    // the last batch of each directory, in flight or collecting names
+    private final ConcurrentHashMap<VirtualDirectory, Batch> batches = new ConcurrentHashMap<>();
+
+    Optional<VirtualFile> find(VirtualDirectory directory, String name) throws IOException {
+        Batch[] created = new Batch[1];
+        Batch batch = batches.compute(directory, (d, last) -> {
+            if (last != null && !last.sent) {
+                last.names.add(name);
+                return last;
+            }
+            Batch next = new Batch();
+            next.names.add(name);
+            if (last == null || last.result.isDone()) {
+                next.sent = true;
+            } else {
+                next.previous = last;
+            }
+            created[0] = next;
+            return next;
+        });
+        if (created[0] == batch) {
+            if (batch.previous != null) {
+                // lookups join the batch until the call in flight is over
+                batch.previous.result.handle((found, e) -> null).join();
+                batch.previous = null;
+                batches.compute(directory, (d, last) -> {
+                    batch.sent = true;
+                    return last;
+                });
+            }
+            send(directory, batch);
+        }
+        return await(batch, name);
+    }
+
+    private void send(VirtualDirectory directory, Batch batch) {
+        try {
+            batch.result.complete(lookUp(directory, batch.names));
+        } catch (RuntimeException e) {
+            batch.result.completeExceptionally(e);
+        } finally {
+            batches.remove(directory, batch);
+        }
+    }
+
+    private static Map<String, VirtualFile> lookUp(VirtualDirectory directory, Set<String> names) {
+        if (names.size() == 1) {
+            String name = names.iterator().next();
+            return directory.find(name).map(file -> Collections.singletonMap(name, file)).orElse(Collections.emptyMap());
+        }
+        return directory.findAll(names);
+    }
+
+    private static Optional<VirtualFile> await(Batch batch, String name) throws IOException {
+        try {
+            return Optional.ofNullable(batch.result.join().get(name));
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+}
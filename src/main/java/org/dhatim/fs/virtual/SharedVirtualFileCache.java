@@ -0,0 +1,193 @@
+package org.dhatim.fs.virtual;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A resolve cache shared by several {@link VirtualFileSystem} instances.
+ * A provider creating one filesystem per session can hold a single instance and give each filesystem the
+ * {@link #view(Object) view} of its tenant: sessions browsing the same tree then share cached entries instead of
+ * each warming its own cache.
+ * Filesystems sharing a view must serve the same tree, and the cached {@link VirtualFile} instances must not
+ * depend on the session that resolved them.
+ * The cached paths of each tenant are also indexed in order, so that the entries of a tree are found without scanning
+ * the whole cache.
+ */
+public final class SharedVirtualFileCache {
+
+    private static final class Key {
+
+        private final Object tenant;
+        private final String path;
+
+        private Key(Object tenant, String path) {
+            this.tenant = tenant;
+            this.path = path;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return tenant.equals(that.tenant) && path.equals(that.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * tenant.hashCode() + path.hashCode();
+        }
+    }
+
+    /**
+     * The part of the shared cache belonging to one tenant. Paths are absolute and normalized.
+     */
+    public final class View {
+
+        private final Object tenant;
+        // a superset of the paths cached for the tenant: entries are added after being cached, and removed once gone
+        private final NavigableSet<String> paths;
+
+        private View(Object tenant) {
+            this.tenant = tenant;
+            this.paths = indexes.computeIfAbsent(tenant, t -> new ConcurrentSkipListSet<>());
+        }
+
+        VirtualFile get(String path, Callable<VirtualFile> loader) throws ExecutionException {
+            boolean[] loaded = new boolean[1];
+            VirtualFile file = cache.get(new Key(tenant, path), () -> {
+                loaded[0] = true;
+                return loader.call();
+            });
+            if (loaded[0]) {
+                paths.add(path);
+            }
+            return file;
+        }
+
+        VirtualFile getIfPresent(String path) {
+            return cache.getIfPresent(new Key(tenant, path));
+        }
+
+        void put(String path, VirtualFile file) {
+            cache.put(new Key(tenant, path), file);
+            paths.add(path);
+        }
+
+        void invalidate(String path) {
+            cache.invalidate(new Key(tenant, path));
+        }
+
+        void invalidateTree(String path) {
+            synchronized (paths) {
+                for (String cached : tree(path)) {
+                    cache.invalidate(new Key(tenant, cached));
+                }
+            }
+        }
+
+        /**
+         * Move the entries of a tree under a new root path, keeping their cached files.
+         * New entries are added before the old ones are removed, so that lookups of the new paths never miss, and an old
+         * entry is only removed if it still holds the moved file.
+         */
+        void moveTree(String source, String target) {
+            synchronized (paths) {
+                List<String> moved = new ArrayList<>();
+                List<VirtualFile> files = new ArrayList<>();
+                for (String cached : tree(source)) {
+                    VirtualFile file = cache.getIfPresent(new Key(tenant, cached));
+                    if (file != null) {
+                        put(target + cached.substring(source.length()), file);
+                        moved.add(cached);
+                        files.add(file);
+                    }
+                }
+                for (int i = 0; i < moved.size(); i++) {
+                    cache.asMap().remove(new Key(tenant, moved.get(i)), files.get(i));
+                }
+            }
+        }
+
+        private Collection<String> tree(String root) {
+            List<String> result = new ArrayList<>();
+            if (root.equals("/")) {
+                result.addAll(paths);
+            } else {
+                if (paths.contains(root)) {
+                    result.add(root);
+                }
+                // the paths below root sort between root + '/' and root + '0', the character following '/'
+                result.addAll(paths.subSet(root + '/', true, root + '0', false));
+            }
+            return result;
+        }
+
+        void invalidateAll() {
+            invalidateTree("/");
+        }
+
+        Object getTenant() {
+            return tenant;
+        }
+
+        public SharedVirtualFileCache getCache() {
+            return SharedVirtualFileCache.this;
+        }
+    }
+
+    private final Cache<Key, VirtualFile> cache;
+    private final ConcurrentMap<Object, NavigableSet<String>> indexes = new ConcurrentHashMap<>();
+
+    public SharedVirtualFileCache(long maximumSize, long expireAfterWrite, TimeUnit unit) {
+        cache = CacheBuilder.newBuilder().maximumSize(maximumSize).expireAfterWrite(expireAfterWrite, unit).recordStats()
+                .removalListener(this::removed)
+                .build();
+    }
+
+    private void removed(RemovalNotification<Key, VirtualFile> notification) {
+        Key key = notification.getKey();
+        NavigableSet<String> paths = indexes.get(key.tenant);
+        if (notification.getCause() == RemovalCause.REPLACED || paths == null) {
+            return;
+        }
+        // a concurrent put may have cached the path again: entries are indexed after being cached, so checking after
+        // the removal keeps it
+        paths.remove(key.path);
+        if (cache.asMap().containsKey(key)) {
+            paths.add(key.path);
+        }
+    }
+
+    public View view(Object tenant) {
+        return new View(Objects.requireNonNull(tenant, "tenant"));
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+}
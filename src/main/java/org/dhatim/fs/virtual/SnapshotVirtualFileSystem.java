@@ -0,0 +1,74 @@
+package org.dhatim.fs.virtual;
+
+import org.dhatim.fs.base.AbstractVirtualFileSystemProvider;
+import org.dhatim.fs.base.VirtualPath;
+import org.dhatim.fs.util.BasicDirectoryStream;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * A filesystem serving immutable snapshots of a tree.
+ * Writers build a new tree and publish it atomically with {@link #setRoot(VirtualDirectory)}; every operation
+ * resolves against the root it read when it started, without locks nor cache.
+ * Paths are resolved from the root downwards and {@link VirtualFile#getParent()} is never used, so unchanged
+ * subtrees can be shared between successive snapshots.
+ */
+public abstract class SnapshotVirtualFileSystem extends VirtualFileSystem {
+
+    public SnapshotVirtualFileSystem(AbstractVirtualFileSystemProvider fileSystemProvider, URI uri) {
+        super(fileSystemProvider, uri, 0, 0, TimeUnit.SECONDS);
+    }
+
+    @Override
+    protected VirtualFile resolve(VirtualPath path) throws IOException {
+        return resolve(getRoot(), path);
+    }
+
+    protected VirtualFile resolve(VirtualDirectory snapshot, VirtualPath path) throws IOException {
+        VirtualPath absolute = path.toAbsolutePath().normalize();
+        VirtualFile current = snapshot;
+        for (int i = 0; i < absolute.getNameCount(); i++) {
+            if (!(current instanceof VirtualDirectory)) {
+                throw new NoSuchFileException(absolute.toString());
+            }
+            current = ((VirtualDirectory) current).find(absolute.getName(i).toString()).orElseThrow(() -> new NoSuchFileException(absolute.toString()));
+        }
+        return current;
+    }
+
+    /**
+     * Resolve a path from the root read when the lookup starts, chaining {@link VirtualDirectory#findAsync(String)}.
+     */
+    @Override
+    public CompletableFuture<VirtualFile> resolveAsync(VirtualPath path) {
+        VirtualPath absolute = path.toAbsolutePath().normalize();
+        CompletableFuture<VirtualFile> current = CompletableFuture.completedFuture(getRoot());
+        for (int i = 0; i < absolute.getNameCount(); i++) {
+            VirtualPath prefix = absolute.getRoot().resolve(absolute.subpath(0, i + 1));
+            current = current.thenCompose(parent -> findAsync(parent, prefix));
+        }
+        return current;
+    }
+
+    /**
+     * Nothing is cached between operations: a path looked up ahead would be looked up again by the operation.
+     */
+    @Override
+    public CompletableFuture<Void> prefetch(VirtualPath path) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    protected DirectoryStream<Path> newDirectoryStream(VirtualPath vDir, Stream<VirtualFile> children, DirectoryStream.Filter<? super Path> filter) {
+        // the children of a shared subtree do not know their parent in this snapshot
+        return new BasicDirectoryStream<>(children, filter, child -> vDir.resolve(child.getName()));
+    }
+
+}
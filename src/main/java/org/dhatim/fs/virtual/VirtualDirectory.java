@@ -3,8 +3,12 @@ package org.dhatim.fs.virtual;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
 import java.nio.file.OpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 import org.dhatim.fs.base.VirtualPath;
 
@@ -12,4 +16,75 @@ public interface VirtualDirectory extends VirtualFile {
     Optional<VirtualFile> find(String name);
     Stream<VirtualFile> getChildren();
     FileChannel createFile(VirtualPath path, Set<? extends OpenOption> options) throws IOException;
+
+    /**
+     * Create an empty child directory. Directories are read-only unless the backend overrides it.
+     * @return the new directory
+     */
+    default VirtualDirectory createDirectory(String name) throws IOException {
+        throw new UnsupportedOperationException("createDirectory");
+    }
+
+    /**
+     * Delete a child, which must be an empty directory if it is one.
+     */
+    default void delete(String name) throws IOException {
+        throw new UnsupportedOperationException("delete");
+    }
+
+    /**
+     * List the children whose name is accepted by the filter.
+     * Backends able to evaluate the filter natively (see {@link VirtualNameFilter#getGlob()}) should override
+     * this method so that non-matching entries are never produced.
+     */
+    default Stream<VirtualFile> getChildren(VirtualNameFilter filter) {
+        return getChildren().filter(child -> filter.test(child.getName()));
+    }
+
+    /**
+     * Move a child to a directory of the same backend, possibly under a new name, atomically.
+     * When the returned file is the instance found before the move, the files below it must remain valid at their new
+     * location: the filesystem then keeps them cached under the new paths.
+     * Backends unable to move throw {@link UnsupportedOperationException}; files are then copied and deleted.
+     * @param replace whether an existing target, file or empty directory, is replaced
+     * @return the moved file
+     */
+    default VirtualFile move(String name, VirtualDirectory target, String newName, boolean replace) throws IOException {
+        throw new UnsupportedOperationException("move");
+    }
+
+    /**
+     * Look up several children at once. Backends able to answer in a single round-trip should override it.
+     * @return the children found, by name
+     */
+    default Map<String, VirtualFile> findAll(Collection<String> names) {
+        Map<String, VirtualFile> result = new HashMap<>();
+        for (String name : names) {
+            find(name).ifPresent(child -> result.put(name, child));
+        }
+        return result;
+    }
+
+    /**
+     * Asynchronous variant of {@link #find(String)}. Backends doing remote I/O should override it so that the
+     * lookup does not block the calling thread; the default completes synchronously.
+     */
+    default CompletableFuture<Optional<VirtualFile>> findAsync(String name) {
+        try {
+            return CompletableFuture.completedFuture(find(name));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Asynchronous variant of {@link #getChildren()}; the default completes synchronously.
+     */
+    default CompletableFuture<Stream<VirtualFile>> getChildrenAsync() {
+        try {
+            return CompletableFuture.completedFuture(getChildren());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 }
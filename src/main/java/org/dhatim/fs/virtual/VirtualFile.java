@@ -8,18 +8,51 @@ import java.nio.file.attribute.GroupPrincipal;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.UserPrincipal;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
 
+/**
+ * A file of a virtual tree.
+ * Attribute getters are only called when a caller reads the matching attribute, so backends may fetch expensive
+ * fields lazily while answering cheap ones (such as the size) from what they already hold.
+ */
 public interface VirtualFile {
     VirtualDirectory getParent();
     String getName();
     FileChannel open(Set<? extends OpenOption> options) throws IOException;
+
     Optional<FileTime> getLastModifiedTime();
     Optional<FileTime> getCreationTime();
     Optional<FileTime> getLastAccessTime();
     Set<PosixFilePermission> getPermissions();
     long getSize();
 
+    /**
+     * @return the final size of content generated when the file is opened, when known before it is produced.
+     * Attributes report it instead of {@link #getSize()} and it is declared to the channels returned by
+     * {@link #open(Set)}, so that clients see the whole length up front.
+     */
+    default OptionalLong getExpectedSize() {
+        return OptionalLong.empty();
+    }
+
+    /**
+     * @return an identifier of the current content (ETag, revision, ...), changing whenever the content changes;
+     * nothing if the backend cannot tell
+     */
+    default Optional<String> getVersion() {
+        return Optional.empty();
+    }
+
+    /**
+     * @param algorithm a {@link java.security.MessageDigest} algorithm name, such as {@code MD5} or {@code SHA-256}
+     * @return the hash of the whole content when the backend already knows it (stored checksum, ETag, ...), so that
+     * clients verifying the file do not make the server read it
+     */
+    default Optional<byte[]> getHash(String algorithm) {
+        return Optional.empty();
+    }
+
     void setOwner(UserPrincipal owner) throws IOException;
     void setTimes(FileTime lastModifiedTime, FileTime lastAccessTime, FileTime createTime) throws IOException;
     void setPermissions(Set<PosixFilePermission> perms) throws IOException;
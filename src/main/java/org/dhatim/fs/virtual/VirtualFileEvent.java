@@ -0,0 +1,90 @@
+package org.dhatim.fs.virtual;
+
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * A change made by a backend to its tree, published to {@link VirtualFileSystem#publish(VirtualFileEvent)} to keep
+ * the filesystem caches coherent.
+ * Paths are absolute paths inside the filesystem. When a path is omitted, it is computed from the parents of the
+ * given file.
+ */
+public final class VirtualFileEvent {
+
+    public enum Kind {
+        CREATED, DELETED, MODIFIED, MOVED
+    }
+
+    private final Kind kind;
+    private final String path;
+    private final String target;
+    private final VirtualFile file;
+
+    private VirtualFileEvent(Kind kind, String path, String target, VirtualFile file) {
+        if (path == null && file == null) {
+            throw new IllegalArgumentException("either path or file is required");
+        }
+        this.kind = kind;
+        this.path = path;
+        this.target = target;
+        this.file = file;
+    }
+
+    public static VirtualFileEvent created(String path, VirtualFile file) {
+        return new VirtualFileEvent(Kind.CREATED, path, null, file);
+    }
+
+    public static VirtualFileEvent created(VirtualFile file) {
+        return new VirtualFileEvent(Kind.CREATED, null, null, Objects.requireNonNull(file, "file"));
+    }
+
+    public static VirtualFileEvent deleted(String path) {
+        return new VirtualFileEvent(Kind.DELETED, Objects.requireNonNull(path, "path"), null, null);
+    }
+
+    public static VirtualFileEvent modified(String path) {
+        return new VirtualFileEvent(Kind.MODIFIED, Objects.requireNonNull(path, "path"), null, null);
+    }
+
+    public static VirtualFileEvent modified(VirtualFile file) {
+        return new VirtualFileEvent(Kind.MODIFIED, null, null, Objects.requireNonNull(file, "file"));
+    }
+
+    public static VirtualFileEvent moved(String source, String target) {
+        return new VirtualFileEvent(Kind.MOVED, Objects.requireNonNull(source, "source"), Objects.requireNonNull(target, "target"), null);
+    }
+
+    public static VirtualFileEvent moved(String source, VirtualFile file) {
+        return new VirtualFileEvent(Kind.MOVED, Objects.requireNonNull(source, "source"), null, Objects.requireNonNull(file, "file"));
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the path of the file, or the source path of a move
+     */
+    public Optional<String> getPath() {
+        return Optional.ofNullable(path);
+    }
+
+    /**
+     * @return the target path of a move
+     */
+    public Optional<String> getTarget() {
+        return Optional.ofNullable(target);
+    }
+
+    /**
+     * @return the created, modified or moved file
+     */
+    public Optional<VirtualFile> getFile() {
+        return Optional.ofNullable(file);
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + (path != null ? path : file.getName()) + (target != null ? " -> " + target : "");
+    }
+}
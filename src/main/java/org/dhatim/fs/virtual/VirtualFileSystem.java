@@ -1,22 +1,26 @@
 package org.dhatim.fs.virtual;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import org.dhatim.fs.base.AbstractVirtualFileSystem;
 import org.dhatim.fs.base.AbstractVirtualFileSystemProvider;
 import org.dhatim.fs.base.VirtualPath;
 import org.dhatim.fs.util.BasicDirectoryStream;
+import org.dhatim.fs.util.FsFileChannelForRead;
+import org.dhatim.fs.util.ThrowingSupplier;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.CopyOption;
 import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
 import java.nio.file.LinkOption;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.GroupPrincipal;
@@ -24,21 +28,38 @@ import java.nio.file.attribute.PosixFileAttributeView;
 import java.nio.file.attribute.PosixFileAttributes;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static java.nio.file.StandardOpenOption.APPEND;
 import static java.nio.file.StandardOpenOption.CREATE;
 import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
 import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
 import static java.nio.file.StandardOpenOption.WRITE;
 
 public abstract class VirtualFileSystem extends AbstractVirtualFileSystem {
 
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
     public class AttributeView implements PosixFileAttributeView {
 
         private final VirtualPath path;
@@ -54,9 +75,7 @@ public abstract class VirtualFileSystem extends AbstractVirtualFileSystem {
 
         @Override
         public PosixFileAttributes readAttributes() throws IOException {
-            VirtualUserPrincipalLookupService lookupService = getUserPrincipalLookupService();
-            VirtualFile file = resolve(path);
-            return new VirtualPosixFileAttributes(file, lookupService.lookupUserPrincipal(file), lookupService.lookupGroupPrincipal(file));
+            return new VirtualPosixFileAttributes(resolve(path), getUserPrincipalLookupService());
         }
 
         @Override
@@ -66,7 +85,9 @@ public abstract class VirtualFileSystem extends AbstractVirtualFileSystem {
 
         @Override
         public void setOwner(UserPrincipal owner) throws IOException {
-            resolve(path).setOwner(owner);
+            VirtualFile file = resolve(path);
+            file.setOwner(owner);
+            principalsChanged(file);
         }
 
         @Override
@@ -81,73 +102,437 @@ public abstract class VirtualFileSystem extends AbstractVirtualFileSystem {
 
         @Override
         public void setGroup(GroupPrincipal group) throws IOException {
-            resolve(path).setGroup(group);
+            VirtualFile file = resolve(path);
+            file.setGroup(group);
+            principalsChanged(file);
+        }
+
+        private void principalsChanged(VirtualFile file) {
+            VirtualUserPrincipalLookupService lookupService = getUserPrincipalLookupService();
+            if (lookupService instanceof CachingUserPrincipalLookupService) {
+                ((CachingUserPrincipalLookupService) lookupService).invalidate(file);
+            }
         }
 
     }
 
-    private VirtualDirectory root;
+    private volatile VirtualDirectory root;
     private VirtualPath rootPath = create("/");
 
-    private final LoadingCache<VirtualPath, VirtualFile> cache = CacheBuilder.newBuilder().maximumSize(100).expireAfterWrite(10, TimeUnit.MINUTES).build(new CacheLoader<VirtualPath, VirtualFile>() {
-        @Override
-        public VirtualFile load(VirtualPath key) throws Exception {
-            if (key.equals(rootPath)) {
-                return root;
-            } else {
-                VirtualFile parent = cache.get(key.getParent());
-                if (parent instanceof VirtualDirectory) {
-                    return ((VirtualDirectory) parent).find(key.getFileName().toString()).orElseThrow(() -> new NoSuchFileException(key.toString()));
-                } else {
-                    throw new IllegalStateException();
-                }
-            }
-        }
-    });
+    private final SharedVirtualFileCache.View cache;
+    private volatile LookupBatcher batcher;
+    private volatile DownloadCoalescer downloads;
+    private volatile DownloadCache contents;
+    private volatile HashCache hashes;
+    private final Map<String, List<VirtualFile>> listings = new ConcurrentHashMap<>();
 
     public VirtualFileSystem(AbstractVirtualFileSystemProvider fileSystemProvider, URI uri) {
+        this(fileSystemProvider, uri, 100, 10, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Create a filesystem with a custom resolve cache.
+     * Backends publishing their changes through {@link #publish(VirtualFileEvent)} can safely use long expiration
+     * delays.
+     */
+    protected VirtualFileSystem(AbstractVirtualFileSystemProvider fileSystemProvider, URI uri, long maximumSize, long expireAfterWrite, TimeUnit unit) {
+        this(fileSystemProvider, uri, new SharedVirtualFileCache(maximumSize, expireAfterWrite, unit).view(new Object()));
+    }
+
+    /**
+     * Create a filesystem resolving its paths through a view of a cache shared with other filesystems serving the
+     * same tree.
+     */
+    protected VirtualFileSystem(AbstractVirtualFileSystemProvider fileSystemProvider, URI uri, SharedVirtualFileCache.View cache) {
         super(fileSystemProvider, uri);
+        this.cache = cache;
     }
 
+    private VirtualFile load(VirtualPath key) throws IOException {
+        if (key.equals(rootPath)) {
+            return root;
+        } else {
+            VirtualFile parent = resolve(key.getParent());
+            if (parent instanceof VirtualDirectory) {
+                VirtualDirectory directory = (VirtualDirectory) parent;
+                String name = key.getFileName().toString();
+                LookupBatcher currentBatcher = batcher;
+                Optional<VirtualFile> file = currentBatcher != null ? currentBatcher.find(directory, name) : directory.find(name);
+                return file.orElseThrow(() -> new NoSuchFileException(key.toString()));
+            } else {
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    /**
+     * Set the root directory. Replacing a previous root clears the resolve cache; setting the initial root does not,
+     * so that a filesystem joining a shared cache reuses its entries.
+     */
     protected final void setRoot(VirtualDirectory newRoot) {
+        VirtualDirectory previous = this.root;
         this.root = newRoot;
         this.rootPath = create("/");
+        if (previous != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Coalesce concurrent cache misses in the same directory into one {@link VirtualDirectory#findAll} call: misses
+     * arriving while a lookup in the directory is in flight are sent together once it is over. A miss with no lookup
+     * in flight is never delayed.
+     */
+    protected final void setLookupBatching(boolean enabled) {
+        batcher = enabled ? new LookupBatcher() : null;
+    }
+
+    /**
+     * Share concurrent read-only opens of the same file version through the given coalescer, which may be shared
+     * with other filesystems.
+     */
+    protected final void setDownloadCoalescer(DownloadCoalescer coalescer) {
+        downloads = coalescer;
+    }
+
+    /**
+     * Serve read-only opens of versioned files from the given cache when their content was already produced.
+     * The cache may be shared with other filesystems.
+     */
+    protected final void setDownloadCache(DownloadCache cache) {
+        contents = cache;
+    }
+
+    /**
+     * Keep the hashes computed by {@link #hash(VirtualPath, String)} for versioned files in the given cache, which may
+     * be shared with other filesystems.
+     */
+    protected final void setHashCache(HashCache cache) {
+        hashes = cache;
+    }
+
+    protected final VirtualDirectory getRoot() {
+        return root;
+    }
+
+    /**
+     * Apply a change made by the backend to the caches of this filesystem.
+     */
+    public void publish(VirtualFileEvent event) {
+        log.debug("treefs.publish {}", event);
+        VirtualPath path = event.getPath().map(this::toCacheKey).orElseGet(() -> create(event.getFile().get()));
+        switch (event.getKind()) {
+            case CREATED:
+            case MODIFIED:
+                if (event.getFile().isPresent()) {
+                    cache.put(path.toString(), event.getFile().get());
+                } else {
+                    cache.invalidate(path.toString());
+                }
+                break;
+            case DELETED:
+                invalidateTree(path);
+                break;
+            case MOVED:
+                if (event.getFile().isPresent()) {
+                    VirtualPath target = event.getTarget().map(this::toCacheKey).orElseGet(() -> create(event.getFile().get()));
+                    moved(path, target, cache.getIfPresent(path.toString()), event.getFile().get());
+                } else {
+                    invalidateTree(path);
+                    invalidateTree(toCacheKey(event.getTarget().get()));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported event: " + event);
+        }
+    }
+
+    private void invalidateTree(VirtualPath path) {
+        cache.invalidateTree(path.toString());
+    }
+
+    private VirtualPath toCacheKey(String path) {
+        return getPath(path).toAbsolutePath().normalize();
     }
 
     @Override
     protected void free() {
-        cache.cleanUp();
+        // the cache may be shared: entries expire on their own
     }
 
     @Override
     protected DirectoryStream<Path> newDirectoryStream(VirtualPath vDir, DirectoryStream.Filter<? super Path> filter) throws IOException {
         log.debug("treefs.newDirectoryStream {}", vDir);
+        List<VirtualFile> listed = listings.remove(vDir.toAbsolutePath().normalize().toString());
+        if (listed != null) {
+            if (filter instanceof VirtualNameFilter) {
+                VirtualNameFilter names = (VirtualNameFilter) filter;
+                return newDirectoryStream(vDir, listed.stream().filter(child -> names.test(child.getName())), null);
+            }
+            return newDirectoryStream(vDir, listed.stream(), filter);
+        }
         VirtualDirectory directory = asDir(resolve(vDir));
-        return new BasicDirectoryStream<>(directory.getChildren(), filter, this::create);
+        if (filter instanceof VirtualNameFilter) {
+            return newDirectoryStream(vDir, directory.getChildren((VirtualNameFilter) filter), null);
+        }
+        return newDirectoryStream(vDir, directory.getChildren(), filter);
+    }
+
+    /**
+     * Wrap the children listed in a directory, naming them from their parents.
+     */
+    protected DirectoryStream<Path> newDirectoryStream(VirtualPath vDir, Stream<VirtualFile> children, DirectoryStream.Filter<? super Path> filter) {
+        return new BasicDirectoryStream<>(children, filter, this::create);
+    }
+
+    /**
+     * Create a name filter from a glob pattern, using the syntax of {@link #getPathMatcher(String)}.
+     * Passing it to {@link java.nio.file.Files#newDirectoryStream(Path, DirectoryStream.Filter)} lets the directory
+     * evaluate the pattern itself.
+     */
+    public VirtualNameFilter newNameFilter(String glob) {
+        Pattern pattern = Pattern.compile(globToRegex(glob));
+        return new VirtualNameFilter(glob, name -> pattern.matcher(name).matches());
     }
 
     @Override
     protected void createDirectory(VirtualPath vDir, FileAttribute<?>... attrs) throws IOException {
         log.debug("treefs.createDirectory {}", vDir);
-        throw new UnsupportedOperationException("createDirectory");
+        VirtualPath key = vDir.toAbsolutePath().normalize();
+        if (key.getParent() == null) {
+            throw new FileAlreadyExistsException(key.toString());
+        }
+        VirtualDirectory parent = asDir(resolve(key.getParent()));
+        cache.put(key.toString(), parent.createDirectory(key.getFileName().toString()));
     }
 
     @Override
     protected void delete(VirtualPath vPath) throws IOException {
         log.debug("treefs.delete {}", vPath);
-        throw new UnsupportedOperationException("delete");
+        VirtualPath key = vPath.toAbsolutePath().normalize();
+        if (key.getParent() == null) {
+            throw new IOException("cannot delete the root directory");
+        }
+        VirtualDirectory parent = asDir(resolve(key.getParent()));
+        try {
+            parent.delete(key.getFileName().toString());
+        } finally {
+            // what was cached below the path is gone or stale, even after a partial failure
+            invalidateTree(key);
+        }
     }
 
+    /**
+     * Copy a file by streaming its content into a new file of the target directory, or create an empty directory
+     * when copying a directory, as {@link java.nio.file.Files#copy(Path, Path, CopyOption...)} does.
+     */
     @Override
     protected void copy(VirtualPath src, VirtualPath dst, CopyOption... options) throws IOException {
         log.debug("treefs.copy {} {}", src, dst);
-        throw new UnsupportedOperationException("copy");
+        List<CopyOption> opts = Arrays.asList(options);
+        VirtualPath target = dst.toAbsolutePath().normalize();
+        VirtualFile source = resolve(src);
+        if (isSameFile(src, target, source)) {
+            // as Files.copy does, copying a file onto itself does nothing, whatever the options
+            return;
+        }
+        if (exists(target)) {
+            if (!opts.contains(StandardCopyOption.REPLACE_EXISTING)) {
+                throw new FileAlreadyExistsException(target.toString());
+            }
+            delete(target);
+        }
+        if (source instanceof VirtualDirectory) {
+            createDirectory(target);
+        } else {
+            VirtualDirectory parent = asDir(resolve(target.getParent()));
+            Set<OpenOption> createOptions = new HashSet<>(Arrays.asList(WRITE, CREATE_NEW));
+            try (FileChannel in = newFileChannel(src, Collections.singleton(READ));
+                 FileChannel out = parent.createFile(target, createOptions)) {
+                ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+                while (in.read(buffer) >= 0) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.clear();
+                }
+            }
+            cache.invalidate(target.toString());
+        }
+        if (opts.contains(StandardCopyOption.COPY_ATTRIBUTES)) {
+            AttributeView copy = new AttributeView(target);
+            copy.setTimes(source.getLastModifiedTime().orElse(null), source.getLastAccessTime().orElse(null), source.getCreationTime().orElse(null));
+            copy.setPermissions(source.getPermissions());
+            VirtualUserPrincipalLookupService lookupService = getUserPrincipalLookupService();
+            UserPrincipal owner = lookupService.lookupUserPrincipal(source);
+            if (owner != null) {
+                copy.setOwner(owner);
+            }
+            GroupPrincipal group = lookupService.lookupGroupPrincipal(source);
+            if (group != null) {
+                copy.setGroup(group);
+            }
+        }
+    }
+
+    /**
+     * Hash the whole content of a file on the server, for the hashing extensions of SFTP.
+     * The hash precomputed by the backend is used when available, then the one cached for the current version;
+     * otherwise the content is read like a download.
+     * @param algorithm a {@link MessageDigest} algorithm name
+     * @return the hash, or nothing for a directory or an unknown algorithm
+     */
+    public Optional<byte[]> hash(VirtualPath path, String algorithm) throws IOException {
+        log.debug("treefs.hash {} with {}", path, algorithm);
+        VirtualFile file = resolve(path);
+        return hash(path, file, algorithm, digest -> read(path, file, digest));
+    }
+
+    /**
+     * Hash a file like {@link #hash(VirtualPath, String)} when a range request of a hashing extension covers it
+     * whole, resolving it once.
+     * @param length the length of the range, 0 meaning up to the end of the file
+     * @param blockSize the size of the blocks hashed separately, 0 meaning a single block
+     * @return the hash, or nothing when the range or the block size does not cover the whole file
+     */
+    public Optional<byte[]> hash(VirtualPath path, long startOffset, long length, long blockSize, String algorithm) throws IOException {
+        log.debug("treefs.hash {} from {} length {} block {} with {}", path, startOffset, length, blockSize, algorithm);
+        return hash(path, startOffset, length, blockSize, algorithm, null);
+    }
+
+    /**
+     * Hash a file like {@link #hash(VirtualPath, long, long, long, String)}, calling {@code compute} instead of reading
+     * the file when the backend has no precomputed hash and none is cached: a caller opening files its own way keeps
+     * doing so, and the hash it computes is cached like the ones read here.
+     */
+    public Optional<byte[]> hash(VirtualPath path, long startOffset, long length, long blockSize, String algorithm, ThrowingSupplier<byte[]> compute) throws IOException {
+        VirtualFile file = resolve(path);
+        OptionalLong expectedSize = file.getExpectedSize();
+        long size = expectedSize.isPresent() ? expectedSize.getAsLong() : file.getSize();
+        if (startOffset != 0 || (length != 0 && length < size) || (blockSize != 0 && blockSize < size)) {
+            return Optional.empty();
+        }
+        return hash(path, file, algorithm, compute == null ? digest -> read(path, file, digest) : digest -> compute.get());
+    }
+
+    private interface HashReader {
+
+        byte[] read(MessageDigest digest) throws IOException;
     }
 
+    private Optional<byte[]> hash(VirtualPath path, VirtualFile file, String algorithm, HashReader reader) throws IOException {
+        if (file instanceof VirtualDirectory) {
+            return Optional.empty();
+        }
+        Optional<byte[]> precomputed = file.getHash(algorithm);
+        if (precomputed.isPresent()) {
+            return precomputed;
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            return Optional.empty();
+        }
+        HashCache hashCache = hashes;
+        Optional<String> version = file.getVersion();
+        String key = path.toAbsolutePath().normalize().toString();
+        if (hashCache != null && version.isPresent()) {
+            byte[] cached = hashCache.get(cache.getTenant(), key, version.get(), algorithm);
+            if (cached != null) {
+                return Optional.of(cached);
+            }
+        }
+        byte[] hash = reader.read(digest);
+        if (hashCache != null && version.isPresent()) {
+            hashCache.put(cache.getTenant(), key, version.get(), algorithm, hash);
+        }
+        return Optional.of(hash);
+    }
+
+    private byte[] read(VirtualPath path, VirtualFile file, MessageDigest digest) throws IOException {
+        try (FileChannel channel = openForRead(path, file, Collections.singleton(READ))) {
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return digest.digest();
+    }
+
+    private boolean isSameFile(VirtualPath src, VirtualPath target, VirtualFile source) throws IOException {
+        if (src.toAbsolutePath().normalize().equals(target)) {
+            return true;
+        }
+        try {
+            return resolve(target) == source;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    private boolean exists(VirtualPath path) throws IOException {
+        try {
+            resolve(path);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Move through {@link VirtualDirectory#move}, keeping the moved tree cached under its new path. When the backend
+     * cannot move, a file is copied with its attributes, owner and group then deleted, unless an atomic move was
+     * requested.
+     */
     @Override
     protected void move(VirtualPath src, VirtualPath dst, CopyOption... options) throws IOException {
         log.debug("treefs.move {} {}", src, dst);
-        throw new UnsupportedOperationException("move");
+        List<CopyOption> opts = Arrays.asList(options);
+        VirtualPath source = src.toAbsolutePath().normalize();
+        VirtualPath target = dst.toAbsolutePath().normalize();
+        if (source.getParent() == null || target.getParent() == null) {
+            throw new FileSystemException(source.toString(), target.toString(), "cannot move the root directory");
+        }
+        VirtualFile file = resolve(source);
+        if (isSameFile(source, target, file)) {
+            // as Files.move does, moving a file onto itself does nothing, whatever the options
+            return;
+        }
+        VirtualDirectory from = asDir(resolve(source.getParent()));
+        VirtualDirectory to = asDir(resolve(target.getParent()));
+        VirtualFile moved;
+        try {
+            moved = from.move(source.getFileName().toString(), to, target.getFileName().toString(), opts.contains(StandardCopyOption.REPLACE_EXISTING));
+        } catch (UnsupportedOperationException e) {
+            if (opts.contains(StandardCopyOption.ATOMIC_MOVE)) {
+                throw new AtomicMoveNotSupportedException(source.toString(), target.toString(), "not supported by the backend");
+            }
+            if (file instanceof VirtualDirectory) {
+                throw e;
+            }
+            CopyOption[] copyOptions = opts.contains(StandardCopyOption.REPLACE_EXISTING)
+                    ? new CopyOption[]{StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES}
+                    : new CopyOption[]{StandardCopyOption.COPY_ATTRIBUTES};
+            copy(source, target, copyOptions);
+            delete(source);
+            return;
+        }
+        moved(source, target, file, moved);
+    }
+
+    private void moved(VirtualPath source, VirtualPath target, VirtualFile before, VirtualFile after) {
+        invalidateTree(target);
+        if (before == after) {
+            // the backend moved the same instances: what was cached below stays valid under the new path
+            cache.moveTree(source.toString(), target.toString());
+        } else {
+            invalidateTree(source);
+            cache.put(target.toString(), after);
+        }
     }
 
     @Override
@@ -156,13 +541,41 @@ public abstract class VirtualFileSystem extends AbstractVirtualFileSystem {
         if (isNewFile(options)) {
             VirtualPath parentPath = vPath.getParent();
             VirtualDirectory dir = asDir(resolve(parentPath));
-            return dir.createFile(vPath, options);
+            FileChannel channel = dir.createFile(vPath, options);
+            // the file may replace a cached one
+            cache.invalidate(vPath.toAbsolutePath().normalize().toString());
+            return channel;
         } else {
             VirtualFile file = resolve(vPath);
+            if (isReadOnly(options)) {
+                return openForRead(vPath, file, options);
+            }
             return file.open(options);
         }
     }
 
+    private FileChannel openForRead(VirtualPath vPath, VirtualFile file, Set<? extends OpenOption> options) throws IOException {
+        Object tenant = cache.getTenant();
+        String path = vPath.toAbsolutePath().normalize().toString();
+        DownloadCache contentCache = contents;
+        if (contentCache != null) {
+            Optional<FileChannel> cached = contentCache.open(tenant, path, file);
+            if (cached.isPresent()) {
+                return cached.get();
+            }
+        }
+        DownloadCoalescer coalescer = downloads;
+        FileChannel channel = coalescer != null ? coalescer.open(tenant, path, file, options) : file.open(options);
+        OptionalLong expectedSize = file.getExpectedSize();
+        if (expectedSize.isPresent() && channel instanceof FsFileChannelForRead && !((FsFileChannelForRead) channel).hasExpectedSize()) {
+            ((FsFileChannelForRead) channel).setExpectedSize(expectedSize.getAsLong());
+        }
+        if (contentCache != null) {
+            contentCache.capture(tenant, path, file, channel);
+        }
+        return channel;
+    }
+
     @Override
     protected PosixFileAttributeView getFileAttributeView(VirtualPath path, LinkOption... options) {
         log.debug("treefs.getPosixFileAttributeView {}", path);
@@ -186,7 +599,8 @@ public abstract class VirtualFileSystem extends AbstractVirtualFileSystem {
 
     protected VirtualFile resolve(VirtualPath path) throws IOException {
         try {
-            return cache.get(path.toAbsolutePath().normalize());
+            VirtualPath key = path.toAbsolutePath().normalize();
+            return cache.get(key.toString(), () -> load(key));
         } catch (ExecutionException e) {
             if (e.getCause() instanceof IOException) {
                 throw (IOException) e.getCause();
@@ -196,7 +610,77 @@ public abstract class VirtualFileSystem extends AbstractVirtualFileSystem {
         }
     }
 
-    private static VirtualDirectory asDir(VirtualFile file) throws IOException {
+    /**
+     * Resolve a path through the asynchronous SPI: lookups missing from the cache are chained with
+     * {@link VirtualDirectory#findAsync(String)} and no thread waits on the backend.
+     * Filesystems overriding {@link #resolve(VirtualPath)} must override it the same way.
+     */
+    public CompletableFuture<VirtualFile> resolveAsync(VirtualPath path) {
+        VirtualPath key = path.toAbsolutePath().normalize();
+        VirtualFile cached = cache.getIfPresent(key.toString());
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        if (key.equals(rootPath)) {
+            return CompletableFuture.completedFuture(root);
+        }
+        return resolveAsync(key.getParent())
+                .thenCompose(parent -> findAsync(parent, key))
+                .thenApply(file -> {
+                    cache.put(key.toString(), file);
+                    return file;
+                });
+    }
+
+    /**
+     * Look up the last name of a path in its parent, failing if it is not found.
+     */
+    static CompletableFuture<VirtualFile> findAsync(VirtualFile parent, VirtualPath path) {
+        if (!(parent instanceof VirtualDirectory)) {
+            return CompletableFuture.failedFuture(new NoSuchFileException(path.toString()));
+        }
+        return ((VirtualDirectory) parent).findAsync(path.getFileName().toString())
+                .thenApply(found -> found.orElseThrow(() -> new CompletionException(new NoSuchFileException(path.toString()))));
+    }
+
+    /**
+     * Look up a path through the asynchronous SPI ahead of an operation on it, so that the operation finds it in the
+     * resolve cache instead of waiting on the backend. The future completes when the lookup is over, even when it
+     * failed: the operation then reports the failure.
+     */
+    public CompletableFuture<Void> prefetch(VirtualPath path) {
+        return resolveAsync(path).handle((file, e) -> null);
+    }
+
+    /**
+     * List a directory through {@link VirtualDirectory#getChildrenAsync()} ahead of opening it: its children are
+     * cached, and the next {@link #newDirectoryStream(VirtualPath, DirectoryStream.Filter)} of the path is served from
+     * this listing. A listing left unused must be dropped with {@link #discardPrefetched(VirtualPath)}.
+     */
+    public CompletableFuture<Void> prefetchDirectory(VirtualPath vDir) {
+        VirtualPath key = vDir.toAbsolutePath().normalize();
+        return resolveAsync(key).thenCompose(file -> asDirAsync(file).getChildrenAsync()).handle((children, e) -> {
+            if (children != null) {
+                try (Stream<VirtualFile> stream = children) {
+                    List<VirtualFile> list = stream.collect(Collectors.toList());
+                    for (VirtualFile child : list) {
+                        cache.put(key.resolve(child.getName()).toString(), child);
+                    }
+                    listings.put(key.toString(), list);
+                } catch (RuntimeException failure) {
+                    // the directory is listed again when opened, which reports the failure
+                    log.debug("treefs.prefetchDirectory {} failed", key, failure);
+                }
+            }
+            return null;
+        });
+    }
+
+    public void discardPrefetched(VirtualPath vDir) {
+        listings.remove(vDir.toAbsolutePath().normalize().toString());
+    }
+
+    static VirtualDirectory asDir(VirtualFile file) throws IOException {
         if (file instanceof VirtualDirectory) {
             return (VirtualDirectory) file;
         } else {
@@ -204,6 +688,18 @@ public abstract class VirtualFileSystem extends AbstractVirtualFileSystem {
         }
     }
 
+    private static VirtualDirectory asDirAsync(VirtualFile file) {
+        try {
+            return asDir(file);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static boolean isReadOnly(Set<? extends OpenOption> options) {
+        return !options.contains(WRITE) && !options.contains(APPEND);
+    }
+
     private static boolean isNewFile(Set<? extends OpenOption> options) {
         return options.contains(WRITE) && (options.contains(CREATE) || options.contains(CREATE_NEW) || options.contains(TRUNCATE_EXISTING));
     }
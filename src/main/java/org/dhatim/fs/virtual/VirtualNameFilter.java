@@ -0,0 +1,71 @@
+package org.dhatim.fs.virtual;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * A directory stream filter on entry names only.
+ * Such a filter is pushed down to {@link VirtualDirectory#getChildren(VirtualNameFilter)} so that backends can
+ * evaluate it themselves (index lookup, SQL {@code LIKE}, ...) instead of producing every entry.
+ * When the filter was built from a glob pattern, the pattern is available through {@link #getGlob()}.
+ */
+public final class VirtualNameFilter implements DirectoryStream.Filter<Path>, Predicate<String> {
+
+    private final String glob;
+    private final Predicate<String> predicate;
+
+    VirtualNameFilter(String glob, Predicate<String> predicate) {
+        this.glob = glob;
+        this.predicate = Objects.requireNonNull(predicate, "predicate");
+    }
+
+    public static VirtualNameFilter of(Predicate<String> predicate) {
+        return new VirtualNameFilter(null, predicate);
+    }
+
+    public Optional<String> getGlob() {
+        return Optional.ofNullable(glob);
+    }
+
+    /**
+     * @return the part of the glob pattern before its first special character, which every accepted name starts with,
+     * or an empty string
+     */
+    public String getLiteralPrefix() {
+        if (glob == null) {
+            return "";
+        }
+        for (int i = 0; i < glob.length(); i++) {
+            switch (glob.charAt(i)) {
+                case '*':
+                case '?':
+                case '[':
+                case '{':
+                case '\\':
+                    return glob.substring(0, i);
+                default:
+                    break;
+            }
+        }
+        return glob;
+    }
+
+    @Override
+    public boolean test(String name) {
+        return predicate.test(name);
+    }
+
+    @Override
+    public boolean accept(Path entry) {
+        Path name = entry.getFileName();
+        return name != null && test(name.toString());
+    }
+
+    @Override
+    public String toString() {
+        return glob == null ? predicate.toString() : "glob:" + glob;
+    }
+}
@@ -1,55 +1,93 @@
 package org.dhatim.fs.virtual;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.GroupPrincipal;
 import java.nio.file.attribute.PosixFileAttributes;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.UserPrincipal;
 import java.util.Collections;
+import java.util.OptionalLong;
 import java.util.Set;
 
+/**
+ * Attributes of a {@link VirtualFile}, each fetched from the file (or the lookup service for principals) the first
+ * time it is read, so that a caller asking for the size only never triggers an owner lookup.
+ * A failed principal lookup is thrown as an {@link UncheckedIOException}, which the provider unwraps.
+ */
 public final class VirtualPosixFileAttributes implements PosixFileAttributes {
 
     private static final FileTime NO_TIME = FileTime.fromMillis(0);
 
     private final VirtualFile file;
-    private final UserPrincipal owner;
-    private final GroupPrincipal group;
-
-    VirtualPosixFileAttributes(VirtualFile file, UserPrincipal owner, GroupPrincipal group) {
+    private final VirtualUserPrincipalLookupService lookupService;
+    private volatile UserPrincipal owner;
+    private volatile GroupPrincipal group;
+    private volatile Set<PosixFilePermission> permissions;
+    private volatile FileTime lastModifiedTime;
+    private volatile FileTime lastAccessTime;
+    private volatile FileTime creationTime;
+
+    VirtualPosixFileAttributes(VirtualFile file, VirtualUserPrincipalLookupService lookupService) {
         this.file = file;
-        this.owner = owner;
-        this.group = group;
+        this.lookupService = lookupService;
     }
 
     @Override
     public UserPrincipal owner() {
+        if (owner == null) {
+            try {
+                owner = lookupService.lookupUserPrincipal(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
         return owner;
     }
 
     @Override
     public GroupPrincipal group() {
+        if (group == null) {
+            try {
+                group = lookupService.lookupGroupPrincipal(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
         return group;
     }
 
     @Override
     public Set<PosixFilePermission> permissions() {
-        return Collections.unmodifiableSet(file.getPermissions());
+        if (permissions == null) {
+            permissions = Collections.unmodifiableSet(file.getPermissions());
+        }
+        return permissions;
     }
 
     @Override
     public FileTime lastModifiedTime() {
-        return file.getLastModifiedTime().orElse(NO_TIME);
+        if (lastModifiedTime == null) {
+            lastModifiedTime = file.getLastModifiedTime().orElse(NO_TIME);
+        }
+        return lastModifiedTime;
     }
 
     @Override
     public FileTime lastAccessTime() {
-        return file.getLastAccessTime().orElse(NO_TIME);
+        if (lastAccessTime == null) {
+            lastAccessTime = file.getLastAccessTime().orElse(NO_TIME);
+        }
+        return lastAccessTime;
     }
 
     @Override
     public FileTime creationTime() {
-        return file.getCreationTime().orElse(NO_TIME);
+        if (creationTime == null) {
+            creationTime = file.getCreationTime().orElse(NO_TIME);
+        }
+        return creationTime;
     }
 
     @Override
@@ -74,7 +112,8 @@ public final class VirtualPosixFileAttributes implements PosixFileAttributes {
 
     @Override
     public long size() {
-        return file.getSize();
+        OptionalLong expected = file.getExpectedSize();
+        return expected.isPresent() ? expected.getAsLong() : file.getSize();
     }
 
     @Override
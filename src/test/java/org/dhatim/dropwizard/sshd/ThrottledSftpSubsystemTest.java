@@ -0,0 +1,210 @@
+package org.dhatim.dropwizard.sshd;
+
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.keyverifier.AcceptAllServerKeyVerifier;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.common.file.FileSystemFactory;
+import org.apache.sshd.common.session.SessionContext;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.command.Command;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.client.SftpClientFactory;
+import org.apache.sshd.sftp.client.extensions.CheckFileNameExtension;
+import org.apache.sshd.sftp.client.extensions.MD5FileExtension;
+import org.apache.sshd.sftp.server.FileHandle;
+import org.apache.sshd.sftp.server.SftpFileSystemAccessor;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+import org.apache.sshd.sftp.server.SftpSubsystemProxy;
+import org.dhatim.fs.memory.MemoryDirectory;
+import org.dhatim.fs.memory.MemoryFileSystem;
+import org.dhatim.fs.memory.MemoryFileSystemProvider;
+import org.dhatim.fs.virtual.HashCache;
+import org.dhatim.fs.virtual.VirtualFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileAttribute;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ThrottledSftpSubsystemTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final MemoryFileSystemProvider provider = new MemoryFileSystemProvider();
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final ExecutorService backendThreads = Executors.newSingleThreadExecutor();
+    // lookups complete later, from another thread, like a remote backend
+    private final Executor backend = CompletableFuture.delayedExecutor(20, TimeUnit.MILLISECONDS, backendThreads);
+    private final List<String> blocking = new CopyOnWriteArrayList<>();
+    private final HashCache hashes = new HashCache(100);
+    private final AtomicInteger opened = new AtomicInteger();
+    private volatile boolean recording;
+    private MemoryDirectory root;
+    private FileSystem fs;
+    private SshServer server;
+    private SshClient client;
+
+    @BeforeEach
+    void start() throws IOException {
+        root = new MemoryDirectory() {
+            @Override
+            public Optional<VirtualFile> find(String name) {
+                if (recording) {
+                    blocking.add("find " + name);
+                }
+                return super.find(name);
+            }
+
+            @Override
+            public Stream<VirtualFile> getChildren() {
+                if (recording) {
+                    blocking.add("getChildren");
+                }
+                return super.getChildren();
+            }
+
+            @Override
+            public CompletableFuture<Optional<VirtualFile>> findAsync(String name) {
+                return CompletableFuture.supplyAsync(() -> super.find(name), backend);
+            }
+
+            @Override
+            public CompletableFuture<Stream<VirtualFile>> getChildrenAsync() {
+                return CompletableFuture.supplyAsync(() -> super.getChildren(), backend);
+            }
+        };
+        fs = new MemoryFileSystem(provider, URI.create("memory://setup"), root);
+
+        server = SshServer.setUpDefaultServer();
+        server.setHost("localhost");
+        server.setPort(0);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+        server.setPasswordAuthenticator((username, password, session) -> true);
+        server.setFileSystemFactory(new FileSystemFactory() {
+            @Override
+            public Path getUserHomeDir(SessionContext session) {
+                return null;
+            }
+
+            @Override
+            public FileSystem createFileSystem(SessionContext session) {
+                return new MemoryFileSystem(provider, URI.create("memory://session" + sessions.incrementAndGet()), root) {
+                    {
+                        setHashCache(hashes);
+                    }
+                };
+            }
+        });
+        server.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory() {
+            @Override
+            public Command createSubsystem(ChannelSession channel) {
+                SftpFileSystemAccessor accessor = new SftpFileSystemAccessor() {
+                    @Override
+                    public SeekableByteChannel openFile(SftpSubsystemProxy subsystem, FileHandle fileHandle, Path file, String handle,
+                                                        Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+                        opened.incrementAndGet();
+                        return SftpFileSystemAccessor.super.openFile(subsystem, fileHandle, file, handle, options, attrs);
+                    }
+                };
+                return new ThrottledSftpSubsystem(resolveExecutorService(), getUnsupportedAttributePolicy(), accessor,
+                        getErrorStatusDataHandler(), getErrorChannelDataReceiver(), channel, 8);
+            }
+        }));
+        server.start();
+        client = SshClient.setUpDefaultClient();
+        client.setServerKeyVerifier(AcceptAllServerKeyVerifier.INSTANCE);
+        client.start();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        client.stop();
+        server.stop(true);
+        fs.close();
+        backendThreads.shutdownNow();
+    }
+
+    private SftpClient connect() throws IOException {
+        ClientSession session = client.connect("user", "localhost", server.getPort()).verify(TIMEOUT).getSession();
+        session.addPasswordIdentity("password");
+        session.auth().verify(TIMEOUT);
+        return SftpClientFactory.instance().createSftpClient(session);
+    }
+
+    @Test
+    void lookupsDoNotBlockTheExecutor() throws IOException {
+        byte[] content = "hello".getBytes(StandardCharsets.UTF_8);
+        Files.write(fs.getPath("/a.txt"), content);
+        Files.createDirectory(fs.getPath("/dir"));
+        recording = true;
+        try (SftpClient sftp = connect()) {
+            assertEquals(content.length, sftp.stat("/a.txt").getSize());
+            try (InputStream in = sftp.read("/a.txt")) {
+                assertArrayEquals(content, in.readAllBytes());
+            }
+            List<String> names = new ArrayList<>();
+            for (SftpClient.DirEntry entry : sftp.readDir("/")) {
+                if (!entry.getFilename().startsWith(".")) {
+                    names.add(entry.getFilename() + (entry.getAttributes().isDirectory() ? "/" : ""));
+                }
+            }
+            names.sort(null);
+            assertEquals(List.of("a.txt", "dir/"), names);
+            assertEquals(content.length, sftp.stat("/dir/../a.txt").getSize());
+        }
+        assertEquals(List.of(), blocking);
+    }
+
+    @Test
+    void hashesAreReadThroughTheAccessorOnce() throws Exception {
+        byte[] content = "hello".getBytes(StandardCharsets.UTF_8);
+        Files.write(fs.getPath("/a.txt"), content);
+        try (SftpClient sftp = connect()) {
+            MD5FileExtension md5 = sftp.getExtension(MD5FileExtension.class);
+            byte[] expected = MessageDigest.getInstance("MD5").digest(content);
+            assertArrayEquals(expected, md5.getHash("/a.txt", 0, 0, new byte[0]));
+            assertEquals(1, opened.get());
+            assertArrayEquals(expected, md5.getHash("/a.txt", 0, 0, new byte[0]));
+            assertEquals(1, opened.get());
+
+            CheckFileNameExtension checkFile = sftp.getExtension(CheckFileNameExtension.class);
+            byte[] sha256 = MessageDigest.getInstance("SHA-256").digest(content);
+            for (int i = 0; i < 2; i++) {
+                Map.Entry<String, Collection<byte[]>> result = checkFile.checkFileName("/a.txt", List.of("sha256"), 0, 0, 0);
+                assertArrayEquals(sha256, result.getValue().iterator().next());
+            }
+            assertEquals(2, opened.get());
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package org.dhatim.fs.base;
+
+import org.dhatim.fs.memory.MemoryFileSystemProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the attributes of a file the way the SFTP subsystem does on every stat, through
+ * {@link AbstractVirtualFileSystemProvider#readAttributes(Path, String, java.nio.file.LinkOption...)}.
+ * {@link #parsed} reproduces the previous implementation, parsing the attribute string on each call and filling a
+ * {@link TreeMap}, on the same resolved attributes, with the set of supported views it allocated on each call.
+ * Run it with {@code java -cp <test classpath> org.dhatim.fs.base.AttributeReadBenchmark}: it reports stats per second
+ * and, through the GC profiler, the bytes allocated per stat ({@code gc.alloc.rate.norm}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttributeReadBenchmark {
+
+    @Param({"posix:*", "size,lastModifiedTime,isDirectory"})
+    public String attributes;
+
+    private FileSystem fs;
+    private Path path;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        fs = new MemoryFileSystemProvider().newFileSystem(URI.create("memory://benchmark"), Collections.emptyMap());
+        path = fs.getPath("/dir/file");
+        Files.createDirectory(path.getParent());
+        Files.write(path, new byte[1024]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fs.close();
+    }
+
+    @Benchmark
+    public Map<String, Object> selector() throws IOException {
+        return Files.readAttributes(path, attributes);
+    }
+
+    @Benchmark
+    public Map<String, Object> parsed() throws IOException {
+        String view;
+        String attrs;
+        int i = attributes.indexOf(':');
+        if (i == -1) {
+            view = "basic";
+            attrs = attributes;
+        } else {
+            view = attributes.substring(0, i++);
+            attrs = attributes.substring(i);
+        }
+        if (!new HashSet<>(Arrays.asList("basic", "owner", "posix")).contains(view)) {
+            throw new UnsupportedOperationException(view);
+        }
+        return readPosixViewAttributes(Files.readAttributes(path, PosixFileAttributes.class), attrs);
+    }
+
+    private static Map<String, Object> readPosixViewAttributes(PosixFileAttributes v, String attrs) {
+        if ("*".equals(attrs)) {
+            attrs = "lastModifiedTime,lastAccessTime,creationTime,size,isRegularFile,isDirectory,isSymbolicLink,isOther,fileKey,owner,permissions,group";
+        }
+        Map<String, Object> map = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (String attr : attrs.split(",")) {
+            switch (attr) {
+                case "lastModifiedTime":
+                    map.put(attr, v.lastModifiedTime());
+                    break;
+                case "lastAccessTime":
+                    map.put(attr, v.lastAccessTime());
+                    break;
+                case "creationTime":
+                    map.put(attr, v.creationTime());
+                    break;
+                case "size":
+                    map.put(attr, v.size());
+                    break;
+                case "isRegularFile":
+                    map.put(attr, v.isRegularFile());
+                    break;
+                case "isDirectory":
+                    map.put(attr, v.isDirectory());
+                    break;
+                case "isSymbolicLink":
+                    map.put(attr, v.isSymbolicLink());
+                    break;
+                case "isOther":
+                    map.put(attr, v.isOther());
+                    break;
+                case "fileKey":
+                    map.put(attr, v.fileKey());
+                    break;
+                case "owner":
+                    map.put(attr, v.owner());
+                    break;
+                case "permissions":
+                    map.put(attr, v.permissions());
+                    break;
+                case "group":
+                    map.put(attr, v.group());
+                    break;
+                default:
+                    break;
+            }
+        }
+        return map;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AttributeReadBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build()).run();
+    }
+}
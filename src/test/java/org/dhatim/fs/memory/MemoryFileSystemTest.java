@@ -0,0 +1,370 @@
+package org.dhatim.fs.memory;
+
+import org.dhatim.fs.virtual.VirtualDirectory;
+import org.dhatim.fs.virtual.VirtualFile;
+import org.dhatim.fs.virtual.VirtualUserPrincipalLookupService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.GroupPrincipal;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.UserPrincipal;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MemoryFileSystemTest {
+
+    private FileSystem fs;
+
+    @BeforeEach
+    void open() throws IOException {
+        fs = new MemoryFileSystemProvider().newFileSystem(URI.create("memory://test"), Collections.emptyMap());
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        fs.close();
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void copy() throws IOException {
+        Path a = fs.getPath("/a");
+        Path b = fs.getPath("/b");
+        Files.write(a, bytes("hello"));
+        Files.write(b, bytes("old"));
+        assertThrows(FileAlreadyExistsException.class, () -> Files.copy(a, b));
+        Files.copy(a, b, StandardCopyOption.REPLACE_EXISTING);
+        assertArrayEquals(bytes("hello"), Files.readAllBytes(b));
+        assertArrayEquals(bytes("hello"), Files.readAllBytes(a));
+    }
+
+    @Test
+    void copyOntoItself() throws IOException {
+        Path a = fs.getPath("/a");
+        Files.write(a, bytes("hello"));
+        Files.copy(a, a, StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(a, fs.getPath("/./a"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        assertArrayEquals(bytes("hello"), Files.readAllBytes(a));
+    }
+
+    @Test
+    void moveOntoItself() throws IOException {
+        Path a = fs.getPath("/a");
+        Files.write(a, bytes("hello"));
+        Files.move(a, a, StandardCopyOption.REPLACE_EXISTING);
+        assertArrayEquals(bytes("hello"), Files.readAllBytes(a));
+    }
+
+    @Test
+    void moveByCopyKeepsOwnerAndGroup() throws IOException {
+        // a backend unable to move: the file is copied then deleted
+        MemoryDirectory root = new MemoryDirectory() {
+            @Override
+            public VirtualFile move(String name, VirtualDirectory target, String newName, boolean replace) {
+                throw new UnsupportedOperationException("move");
+            }
+        };
+        try (FileSystem copying = new MemoryFileSystem(new MemoryFileSystemProvider(), URI.create("memory://copying"), root)) {
+            Path a = copying.getPath("/a");
+            Path b = copying.getPath("/b");
+            Files.write(a, bytes("hello"));
+            UserPrincipalLookupService lookupService = copying.getUserPrincipalLookupService();
+            Files.setOwner(a, lookupService.lookupPrincipalByName("alice"));
+            GroupPrincipal staff = lookupService.lookupPrincipalByGroupName("staff");
+            Files.getFileAttributeView(a, PosixFileAttributeView.class).setGroup(staff);
+
+            Files.move(a, a, StandardCopyOption.REPLACE_EXISTING);
+            assertArrayEquals(bytes("hello"), Files.readAllBytes(a));
+
+            Files.move(a, b);
+            assertFalse(Files.exists(a));
+            assertArrayEquals(bytes("hello"), Files.readAllBytes(b));
+            assertEquals("alice", Files.getOwner(b).getName());
+            assertEquals("staff", Files.readAttributes(b, PosixFileAttributes.class).group().getName());
+        }
+    }
+
+    @Test
+    void failedOwnerLookupIsAnIOException() throws IOException {
+        VirtualUserPrincipalLookupService failing = new VirtualUserPrincipalLookupService() {
+            @Override
+            public UserPrincipal lookupUserPrincipal(VirtualFile file) throws IOException {
+                throw new IOException("directory unavailable");
+            }
+
+            @Override
+            public GroupPrincipal lookupGroupPrincipal(VirtualFile file) throws IOException {
+                throw new IOException("directory unavailable");
+            }
+
+            @Override
+            public UserPrincipal lookupPrincipalByName(String name) throws IOException {
+                throw new IOException("directory unavailable");
+            }
+
+            @Override
+            public GroupPrincipal lookupPrincipalByGroupName(String group) throws IOException {
+                throw new IOException("directory unavailable");
+            }
+        };
+        MemoryFileSystemProvider provider = new MemoryFileSystemProvider();
+        try (FileSystem lookupFailing = new MemoryFileSystem(provider, URI.create("memory://failing")) {
+            @Override
+            public VirtualUserPrincipalLookupService getUserPrincipalLookupService() {
+                return failing;
+            }
+        }) {
+            Path a = lookupFailing.getPath("/a");
+            Files.write(a, bytes("hello"));
+            assertEquals(5L, Files.readAttributes(a, "size").get("size"));
+            IOException e = assertThrows(IOException.class, () -> Files.readAttributes(a, "posix:owner,size"));
+            assertEquals("directory unavailable", e.getMessage());
+        }
+    }
+
+    @Test
+    void createAndDeleteDirectories() throws IOException {
+        Path dir = fs.getPath("/dir");
+        Files.createDirectory(dir);
+        assertTrue(Files.isDirectory(dir));
+        assertThrows(FileAlreadyExistsException.class, () -> Files.createDirectory(dir));
+        Files.createDirectories(fs.getPath("/dir/a/b"));
+        Files.write(fs.getPath("/dir/a/b/file"), bytes("x"));
+        assertThrows(DirectoryNotEmptyException.class, () -> Files.delete(fs.getPath("/dir/a")));
+        Files.delete(fs.getPath("/dir/a/b/file"));
+        Files.delete(fs.getPath("/dir/a/b"));
+        assertFalse(Files.exists(fs.getPath("/dir/a/b")));
+        assertThrows(NoSuchFileException.class, () -> Files.delete(fs.getPath("/dir/a/b")));
+        try (Stream<Path> children = Files.list(dir)) {
+            assertEquals(List.of(fs.getPath("/dir/a")), children.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void rename() throws IOException {
+        Files.createDirectories(fs.getPath("/src/sub"));
+        Files.write(fs.getPath("/src/sub/file"), bytes("hello"));
+        // cache the files below before moving their ancestor
+        assertArrayEquals(bytes("hello"), Files.readAllBytes(fs.getPath("/src/sub/file")));
+        Files.createDirectory(fs.getPath("/dst"));
+
+        Files.move(fs.getPath("/src"), fs.getPath("/dst/moved"));
+        assertFalse(Files.exists(fs.getPath("/src")));
+        assertFalse(Files.exists(fs.getPath("/src/sub/file")));
+        assertArrayEquals(bytes("hello"), Files.readAllBytes(fs.getPath("/dst/moved/sub/file")));
+
+        Files.write(fs.getPath("/dst/other"), bytes("other"));
+        assertThrows(FileAlreadyExistsException.class, () -> Files.move(fs.getPath("/dst/moved/sub/file"), fs.getPath("/dst/other")));
+        Files.move(fs.getPath("/dst/moved/sub/file"), fs.getPath("/dst/other"), StandardCopyOption.REPLACE_EXISTING);
+        assertArrayEquals(bytes("hello"), Files.readAllBytes(fs.getPath("/dst/other")));
+        assertThrows(FileSystemException.class, () -> Files.move(fs.getPath("/dst"), fs.getPath("/dst/moved/inside")));
+    }
+
+    @Test
+    void concurrentCreationsAndRenames() throws Exception {
+        Path dir = Files.createDirectory(fs.getPath("/dir"));
+        int writers = 4;
+        int files = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                String prefix = "w" + w + "-";
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < files; i++) {
+                        Path file = Files.createFile(dir.resolve(prefix + i));
+                        if (i % 2 == 0) {
+                            Files.move(file, dir.resolve(prefix + i + ".moved"));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        List<String> names;
+        try (Stream<Path> children = Files.list(dir)) {
+            names = children.map(child -> child.getFileName().toString()).collect(Collectors.toList());
+        }
+        assertEquals(writers * files, names.size());
+        assertEquals(names.stream().sorted().collect(Collectors.toList()), names);
+        try (DirectoryStream<Path> moved = Files.newDirectoryStream(dir, "w1-*.moved")) {
+            int count = 0;
+            for (Path child : moved) {
+                assertTrue(child.getFileName().toString().startsWith("w1-"));
+                count++;
+            }
+            assertEquals(files / 2, count);
+        }
+    }
+
+    @Test
+    void truncateAndSparseWrites() throws IOException {
+        Path file = fs.getPath("/sparse");
+        int chunk = MemoryFile.CHUNK_SIZE;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // across a chunk boundary, past the end
+            channel.write(ByteBuffer.wrap(bytes("abcdef")), chunk * 2L - 3);
+            assertEquals(chunk * 2L + 3, channel.size());
+            ByteBuffer gap = ByteBuffer.allocate(chunk);
+            assertEquals(chunk, channel.read(gap, 10));
+            assertArrayEquals(new byte[chunk], gap.array());
+            ByteBuffer written = ByteBuffer.allocate(6);
+            channel.read(written, chunk * 2L - 3);
+            assertArrayEquals(bytes("abcdef"), written.array());
+
+            channel.truncate(chunk * 2L - 1);
+            assertEquals(chunk * 2L - 1, channel.size());
+            // growing again reads zeros where the truncated bytes were
+            channel.write(ByteBuffer.wrap(bytes("z")), chunk * 2L + 1);
+            ByteBuffer tail = ByteBuffer.allocate(5);
+            channel.read(tail, chunk * 2L - 3);
+            assertArrayEquals(new byte[]{'a', 'b', 0, 0, 'z'}, tail.array());
+        }
+        Files.write(file, bytes("new"));
+        assertArrayEquals(bytes("new"), Files.readAllBytes(file));
+    }
+
+    @Test
+    void closedChannelAndTransferPastTheEnd() throws IOException {
+        Path file = fs.getPath("/file");
+        Files.write(file, bytes("hello"));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try (ReadableByteChannel src = Channels.newChannel(new ByteArrayInputStream(bytes("world")))) {
+            assertEquals(0, channel.transferFrom(src, 6, 5));
+        }
+        assertEquals(5, channel.size());
+        channel.close();
+        assertThrows(ClosedChannelException.class, () -> channel.read(ByteBuffer.allocate(1)));
+        assertThrows(ClosedChannelException.class, () -> channel.write(ByteBuffer.wrap(bytes("x")), 0));
+        assertThrows(ClosedChannelException.class, channel::size);
+        assertThrows(ClosedChannelException.class, () -> channel.position(0));
+        assertArrayEquals(bytes("hello"), Files.readAllBytes(file));
+    }
+
+    @Test
+    void concurrentAppends() throws Exception {
+        Path file = fs.getPath("/log");
+        Files.createFile(file);
+        int writers = 4;
+        int records = 500;
+        byte[] record = new byte[100];
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                byte value = (byte) ('a' + w);
+                futures.add(executor.submit(() -> {
+                    byte[] own = record.clone();
+                    Arrays.fill(own, value);
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.APPEND)) {
+                        for (int i = 0; i < records; i++) {
+                            channel.write(ByteBuffer.wrap(own));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        byte[] content = Files.readAllBytes(file);
+        assertEquals(writers * records * record.length, content.length);
+        for (int offset = 0; offset < content.length; offset += record.length) {
+            for (int i = 1; i < record.length; i++) {
+                assertEquals(content[offset], content[offset + i], "record at " + offset + " is interleaved");
+            }
+        }
+    }
+
+    @Test
+    void concurrentReadsAndWrites() throws Exception {
+        Path file = fs.getPath("/shared");
+        int blocks = 256;
+        int blockSize = 1024;
+        Files.write(file, new byte[blocks * blockSize]);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // the writer fills each block with one value: readers must never see a block half written
+            Future<?> writer = executor.submit(() -> {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    for (int round = 1; round <= 20; round++) {
+                        byte[] block = new byte[blockSize];
+                        Arrays.fill(block, (byte) round);
+                        for (int b = 0; b < blocks; b++) {
+                            channel.write(ByteBuffer.wrap(block), (long) b * blockSize);
+                        }
+                    }
+                }
+                return null;
+            });
+            Future<?> reader = executor.submit(() -> {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    ByteBuffer block = ByteBuffer.allocate(blockSize);
+                    for (int i = 0; i < 20 * blocks; i++) {
+                        block.clear();
+                        assertEquals(blockSize, channel.read(block, (long) (i % blocks) * blockSize));
+                        byte[] bytes = block.array();
+                        for (byte b : bytes) {
+                            assertEquals(bytes[0], b, "block read while written");
+                        }
+                    }
+                }
+                return null;
+            });
+            writer.get();
+            reader.get();
+        } finally {
+            executor.shutdown();
+        }
+        byte[] last = new byte[blocks * blockSize];
+        Arrays.fill(last, (byte) 20);
+        assertArrayEquals(last, Files.readAllBytes(file));
+    }
+}
@@ -0,0 +1,73 @@
+package org.dhatim.fs.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class FsByteChannelTest {
+
+    private static final int CHUNK = 1024;
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private Path directory;
+    private SpillDirectory previous;
+
+    @BeforeEach
+    void useSmallSpillDirectory() throws IOException {
+        directory = Files.createTempDirectory("spill");
+        previous = SpillDirectory.getDefault();
+        SpillDirectory.setDefault(new SpillDirectory(directory, 4 * CHUNK, 0));
+    }
+
+    @AfterEach
+    void restoreSpillDirectory() throws IOException {
+        SpillDirectory.setDefault(previous);
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    void fullSpillDirectoryWaitsForTheReader() throws Exception {
+        FsByteChannel channel = new FsByteChannel(CHUNK);
+        channel.setSpillCapacity(Long.MAX_VALUE);
+        int size = 16 * CHUNK;
+        Thread writer = new Thread(() -> {
+            try {
+                ByteBuffer src = ByteBuffer.allocate(size);
+                for (int i = 0; i < size; i++) {
+                    src.put((byte) i);
+                }
+                channel.write(src.flip());
+                channel.close();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        writer.start();
+        ByteBuffer dst = ByteBuffer.allocate(size + 1);
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            // let the writer fill the buffer and the spill directory before reading
+            while (writer.getState() != Thread.State.TIMED_WAITING && writer.isAlive()) {
+                Thread.sleep(1);
+            }
+            while (channel.read(dst) >= 0) {
+                // keep reading
+            }
+            writer.join();
+        });
+        assertEquals(size, dst.position());
+        dst.flip();
+        for (int i = 0; i < size; i++) {
+            assertEquals((byte) i, dst.get(), "byte at " + i);
+        }
+        assertEquals(0, SpillDirectory.getDefault().getBytesInUse());
+    }
+}
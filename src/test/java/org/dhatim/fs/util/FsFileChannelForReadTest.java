@@ -0,0 +1,276 @@
+package org.dhatim.fs.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class FsFileChannelForReadTest {
+
+    private static final int CHUNK = 1024;
+    private static final int CHUNKS = 64;
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * Emits {@code count} chunks of {@link #CHUNK} bytes, one per request, on its own thread.
+     */
+    private static final class ChunkPublisher implements Flow.Publisher<ByteBuffer> {
+
+        private final int count;
+        private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "publisher");
+            t.setDaemon(true);
+            return t;
+        });
+
+        private ChunkPublisher(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            AtomicLong emitted = new AtomicLong();
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    executor.execute(() -> {
+                        for (long i = 0; i < n; i++) {
+                            long chunk = emitted.getAndIncrement();
+                            if (chunk < count) {
+                                subscriber.onNext(chunk(chunk * CHUNK));
+                            }
+                            if (chunk + 1 == count) {
+                                subscriber.onComplete();
+                            }
+                        }
+                    });
+                }
+
+                @Override
+                public void cancel() {
+                    emitted.set(count);
+                }
+            });
+        }
+    }
+
+    private static ByteBuffer chunk(long offset) {
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK);
+        for (int i = 0; i < CHUNK; i++) {
+            buffer.put(valueAt(offset + i));
+        }
+        return buffer.flip();
+    }
+
+    private static byte valueAt(long offset) {
+        return (byte) (offset % 251);
+    }
+
+    private static void assertContent(ByteBuffer buffer, long offset) {
+        buffer.flip();
+        for (int i = 0; buffer.hasRemaining(); i++) {
+            assertEquals(valueAt(offset + i), buffer.get(), "byte at " + (offset + i));
+        }
+    }
+
+    private static FsFileChannelForRead publisherChannel() throws IOException {
+        return new FsFileChannelForRead().transferFromPublisher(new ChunkPublisher(CHUNKS), 4 * CHUNK);
+    }
+
+    @Test
+    void seekPastReadAhead() throws IOException {
+        try (FsFileChannelForRead channel = publisherChannel()) {
+            long offset = 48 * CHUNK + 10;
+            ByteBuffer dst = ByteBuffer.allocate(100);
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                channel.position(offset);
+                assertEquals(100, channel.read(dst));
+            });
+            assertContent(dst, offset);
+        }
+    }
+
+    @Test
+    void positionalReadPastReadAhead() throws IOException {
+        try (FsFileChannelForRead channel = publisherChannel()) {
+            channel.setReadAhead(0);
+            long offset = 32 * CHUNK;
+            ByteBuffer dst = ByteBuffer.allocate(CHUNK);
+            assertTimeoutPreemptively(TIMEOUT, () -> assertEquals(CHUNK, channel.read(dst, offset)));
+            assertContent(dst, offset);
+        }
+    }
+
+    @Test
+    void readToEnd() throws IOException {
+        try (FsFileChannelForRead channel = publisherChannel()) {
+            // one more byte than the content, so that the last read reaches the end of it
+            ByteBuffer dst = ByteBuffer.allocate(CHUNKS * CHUNK + 1);
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                while (channel.read(dst) >= 0) {
+                    // keep reading
+                }
+            });
+            assertEquals(CHUNKS * CHUNK, dst.position());
+            assertContent(dst, 0);
+        }
+    }
+
+    private static FsFileChannelForRead rangeChannel() throws IOException {
+        return new FsFileChannelForRead().transferRangeToChannel("range", FsFileChannelForReadTest::writeRange);
+    }
+
+    private static void writeRange(long offset, long length, WritableByteChannel out) throws IOException {
+        long end = length < 0 ? CHUNKS * CHUNK : offset + length;
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK);
+        for (long o = offset; o < end; o++) {
+            buffer.put(valueAt(o));
+            if (!buffer.hasRemaining()) {
+                out.write(buffer.flip());
+                buffer.clear();
+            }
+        }
+        out.write(buffer.flip());
+    }
+
+    @Test
+    void rangeStartsAtFirstRead() throws IOException {
+        try (FsFileChannelForRead channel = rangeChannel()) {
+            long offset = 10 * CHUNK + 3;
+            ByteBuffer dst = ByteBuffer.allocate(100);
+            assertTimeoutPreemptively(TIMEOUT, () -> assertEquals(100, channel.read(dst, offset)));
+            assertContent(dst, offset);
+            assertFalse(channel.share().isPresent(), "a range not starting at 0 cannot be shared");
+
+            ByteBuffer before = ByteBuffer.allocate(100);
+            assertTimeoutPreemptively(TIMEOUT, () -> assertEquals(100, channel.read(before, 5)));
+            assertContent(before, 5);
+        }
+    }
+
+    @Test
+    void sharedRangeStartsAtZero() throws IOException {
+        try (FsFileChannelForRead channel = rangeChannel();
+             FsFileChannelForRead shared = channel.share().orElseThrow()) {
+            long offset = 10 * CHUNK;
+            ByteBuffer dst = ByteBuffer.allocate(100);
+            assertTimeoutPreemptively(TIMEOUT, () -> assertEquals(100, shared.read(dst, offset)));
+            assertContent(dst, offset);
+            ByteBuffer first = ByteBuffer.allocate(100);
+            assertTimeoutPreemptively(TIMEOUT, () -> assertEquals(100, channel.read(first, 0)));
+            assertContent(first, 0);
+        }
+    }
+
+    @Test
+    void farReadOfSharedRangeDetaches() throws IOException {
+        CountDownLatch done = new CountDownLatch(1);
+        List<String> ranges = new CopyOnWriteArrayList<>();
+        FsFileChannelForRead channel = new FsFileChannelForRead().transferRangeToChannel("range", (offset, length, out) -> {
+            ranges.add(offset + "+" + length);
+            if (offset == 0) {
+                // the shared producer is stuck at the beginning of the content
+                out.write(chunk(0));
+                try {
+                    done.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else {
+                writeRange(offset, length, out);
+            }
+        });
+        try (FsFileChannelForRead first = channel.setRangeRestartDistance(4 * CHUNK);
+             FsFileChannelForRead second = first.share().orElseThrow()) {
+            first.setReadAhead(0);
+            second.setReadAhead(0);
+            assertTimeoutPreemptively(TIMEOUT, () -> {
+                ByteBuffer start = ByteBuffer.allocate(100);
+                assertEquals(100, first.read(start, 0));
+                assertContent(start, 0);
+
+                long far = 40 * CHUNK;
+                ByteBuffer end = ByteBuffer.allocate(100);
+                assertEquals(100, second.read(end, far));
+                assertContent(end, far);
+
+                long middle = 20 * CHUNK;
+                ByteBuffer rest = ByteBuffer.allocate(CHUNK);
+                assertEquals(CHUNK, first.read(rest, middle));
+                assertContent(rest, middle);
+            });
+            // the second range stops where the first one started
+            assertEquals(List.of("0+-1", 40 * CHUNK + "+-1", 20 * CHUNK + "+" + 20 * CHUNK), ranges);
+        } finally {
+            done.countDown();
+        }
+    }
+
+    @Test
+    void producerFailureIsNotEndOfContent() throws IOException {
+        Path directory = Files.createTempDirectory("spill");
+        SpillDirectory previous = SpillDirectory.getDefault();
+        FsFileChannelForRead channel;
+        SpillDirectory.setDefault(new SpillDirectory(directory, 4 * CHUNK, 0));
+        try {
+            channel = new FsFileChannelForRead();
+        } finally {
+            SpillDirectory.setDefault(previous);
+        }
+        try (FsFileChannelForRead c = channel) {
+            c.transferToChannel("producer", out -> {
+                for (int i = 0; i < CHUNKS; i++) {
+                    out.write(chunk((long) i * CHUNK));
+                }
+            });
+            ByteBuffer dst = ByteBuffer.allocate(CHUNKS * CHUNK + 1);
+            assertTimeoutPreemptively(TIMEOUT, () -> assertThrows(IOException.class, () -> {
+                while (c.read(dst) >= 0) {
+                    // keep reading up to the failure
+                }
+            }));
+            assertEquals(4 * CHUNK, dst.position());
+            assertContent(dst, 0);
+        } finally {
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Test
+    void readEndingAtProducedBytesDoesNotWait() throws IOException {
+        CountDownLatch done = new CountDownLatch(1);
+        try (FsFileChannelForRead channel = new FsFileChannelForRead()) {
+            channel.setReadAhead(0);
+            channel.transferToChannel("producer", out -> {
+                out.write(chunk(0));
+                try {
+                    done.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            ByteBuffer dst = ByteBuffer.allocate(CHUNK);
+            // the producer is still running: the read must not wait for more than what it asks for
+            assertTimeoutPreemptively(TIMEOUT, () -> assertEquals(CHUNK, channel.read(dst, 0)));
+            assertContent(dst, 0);
+        } finally {
+            done.countDown();
+        }
+    }
+}
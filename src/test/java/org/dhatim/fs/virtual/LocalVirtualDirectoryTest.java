@@ -0,0 +1,161 @@
+package org.dhatim.fs.virtual;
+
+import org.dhatim.fs.base.VirtualPath;
+import org.dhatim.fs.memory.MemoryFileSystemProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalVirtualDirectoryTest {
+
+    private Path temp;
+    private Path outside;
+    private LocalVirtualDirectory mount;
+    private FileSystem paths;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        temp = Files.createTempDirectory("local");
+        Path root = Files.createDirectory(temp.resolve("root"));
+        outside = Files.createDirectory(temp.resolve("outside"));
+        Files.write(outside.resolve("secret"), "secret".getBytes(StandardCharsets.UTF_8));
+        Files.createDirectory(root.resolve("sub"));
+        Files.write(root.resolve("sub/file"), "inside".getBytes(StandardCharsets.UTF_8));
+        Files.createSymbolicLink(root.resolve("link-in"), root.resolve("sub"));
+        Files.createSymbolicLink(root.resolve("link-out"), outside.resolve("secret"));
+        Files.createSymbolicLink(root.resolve("dir-out"), outside);
+        Files.createSymbolicLink(root.resolve("relative-out"), root.relativize(outside.resolve("secret")));
+        Files.createSymbolicLink(root.resolve("dangling"), outside.resolve("missing"));
+        mount = new LocalVirtualDirectory(null, root);
+        paths = new MemoryFileSystemProvider().newFileSystem(URI.create("memory://paths"), Collections.emptyMap());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        paths.close();
+        try (Stream<Path> files = Files.walk(temp)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    void linksInsideAreFollowed() throws IOException {
+        VirtualFile link = mount.find("link-in").get();
+        assertTrue(link instanceof VirtualDirectory);
+        assertEquals("link-in", link.getName());
+        VirtualFile file = ((VirtualDirectory) link).find("file").get();
+        assertEquals(6, file.getSize());
+    }
+
+    @Test
+    void linksOutsideAreHidden() {
+        assertFalse(mount.find("link-out").isPresent());
+        assertFalse(mount.find("dir-out").isPresent());
+        assertFalse(mount.find("relative-out").isPresent());
+        assertFalse(mount.find("dangling").isPresent());
+        assertFalse(mount.find("..").isPresent());
+        List<String> names;
+        try (Stream<VirtualFile> children = mount.getChildren()) {
+            names = children.map(VirtualFile::getName).sorted().collect(Collectors.toList());
+        }
+        assertEquals(List.of("link-in", "sub"), names);
+        try (Stream<VirtualFile> children = mount.getChildren(new VirtualNameFilter("*", name -> true))) {
+            assertEquals(names, children.map(VirtualFile::getName).sorted().collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void linksOutsideAreNotWritten() throws IOException {
+        Set<StandardOpenOption> options = Set.of(StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        assertThrows(AccessDeniedException.class, () -> mount.createFile((VirtualPath) paths.getPath("/link-out"), options));
+        assertThrows(AccessDeniedException.class, () -> mount.createFile((VirtualPath) paths.getPath("/dangling"), options));
+        assertArrayEquals("secret".getBytes(StandardCharsets.UTF_8), Files.readAllBytes(outside.resolve("secret")));
+        assertFalse(Files.exists(outside.resolve("missing")));
+        mount.createFile((VirtualPath) paths.getPath("/new"), options).close();
+        assertTrue(mount.find("new").isPresent());
+    }
+
+    @Test
+    void versionChangesWithinAMillisecond() throws IOException {
+        Path file = mount.getPath().resolve("versioned");
+        Files.write(file, "a".getBytes(StandardCharsets.UTF_8));
+        FileTime time = FileTime.from(Instant.parse("2020-01-01T00:00:00.000000100Z"));
+        Files.setLastModifiedTime(file, time);
+        String version = mount.find("versioned").get().getVersion().get();
+
+        Files.write(file, "b".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.from(time.toInstant().plusNanos(1000)));
+        String rewritten = mount.find("versioned").get().getVersion().get();
+        assertNotEquals(version, rewritten);
+
+        Path replacement = Files.write(mount.getPath().resolve("replacement"), "c".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(replacement, FileTime.from(time.toInstant().plusNanos(1000)));
+        Files.move(replacement, file, StandardCopyOption.REPLACE_EXISTING);
+        assertNotEquals(rewritten, mount.find("versioned").get().getVersion().get());
+    }
+
+    @Test
+    void directoriesAreCreatedMovedAndDeleted() throws IOException {
+        VirtualDirectory created = mount.createDirectory("created");
+        assertTrue(Files.isDirectory(mount.getPath().resolve("created")));
+        assertThrows(FileAlreadyExistsException.class, () -> mount.createDirectory("created"));
+        created.createFile((VirtualPath) paths.getPath("/created/file"), Set.of(StandardOpenOption.WRITE, StandardOpenOption.CREATE)).close();
+
+        VirtualDirectory sub = (VirtualDirectory) mount.find("sub").get();
+        assertThrows(FileAlreadyExistsException.class, () -> created.move("file", sub, "file", false));
+        VirtualFile moved = created.move("file", sub, "file", true);
+        assertEquals("file", moved.getName());
+        assertEquals(0, moved.getSize());
+        assertFalse(created.find("file").isPresent());
+
+        VirtualFile renamed = mount.move("created", mount, "renamed", false);
+        assertTrue(renamed instanceof VirtualDirectory);
+        assertFalse(mount.find("created").isPresent());
+        mount.delete("renamed");
+        assertFalse(mount.find("renamed").isPresent());
+        assertThrows(NoSuchFileException.class, () -> mount.delete("renamed"));
+    }
+
+    @Test
+    void linksOutsideAreNotMovedNorDeleted() {
+        assertThrows(NoSuchFileException.class, () -> mount.delete("link-out"));
+        assertThrows(NoSuchFileException.class, () -> mount.delete("dir-out"));
+        assertThrows(NoSuchFileException.class, () -> mount.move("link-out", mount, "moved", false));
+        assertThrows(AccessDeniedException.class, () -> mount.move("sub", mount, "dangling", true));
+        assertThrows(AccessDeniedException.class, () -> mount.createDirectory("dangling"));
+        assertThrows(FileSystemException.class, () -> mount.createDirectory(".."));
+        assertTrue(Files.exists(outside.resolve("secret")));
+        assertTrue(Files.isDirectory(mount.getPath().resolve("sub")));
+        assertFalse(Files.exists(outside.resolve("missing")));
+    }
+}
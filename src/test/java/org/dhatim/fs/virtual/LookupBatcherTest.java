@@ -0,0 +1,116 @@
+package org.dhatim.fs.virtual;
+
+import org.dhatim.fs.memory.MemoryDirectory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class LookupBatcherTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final LookupBatcher batcher = new LookupBatcher();
+    private final List<Set<String>> calls = new CopyOnWriteArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile boolean slow;
+
+    private final MemoryDirectory directory = new MemoryDirectory() {
+        @Override
+        public Optional<VirtualFile> find(String name) {
+            calls.add(Set.of(name));
+            if (slow) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.find(name);
+        }
+
+        @Override
+        public Map<String, VirtualFile> findAll(Collection<String> names) {
+            calls.add(new TreeSet<>(names));
+            Map<String, VirtualFile> result = new HashMap<>();
+            for (String name : names) {
+                super.find(name).ifPresent(child -> result.put(name, child));
+            }
+            return result;
+        }
+    };
+
+    @BeforeEach
+    void fill() throws IOException {
+        for (String name : List.of("a", "b", "c")) {
+            directory.createDirectory(name);
+        }
+        calls.clear();
+    }
+
+    @Test
+    void sequentialLookupsAreSentAtOnce() throws IOException {
+        assertEquals("a", batcher.find(directory, "a").get().getName());
+        assertEquals("b", batcher.find(directory, "b").get().getName());
+        assertFalse(batcher.find(directory, "x").isPresent());
+        assertEquals(List.of(Set.of("a"), Set.of("b"), Set.of("x")), calls);
+    }
+
+    @Test
+    void lookupsDuringACallAreBatched() {
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            slow = true;
+            Map<String, Optional<VirtualFile>> results = new ConcurrentHashMap<>();
+            List<Thread> threads = new ArrayList<>();
+            threads.add(lookUp("a", results));
+            while (calls.isEmpty()) {
+                Thread.sleep(1);
+            }
+            for (String name : List.of("b", "c", "x")) {
+                threads.add(lookUp(name, results));
+            }
+            // the follow-up batch is collecting names until the call in flight is over
+            for (Thread thread : threads.subList(1, threads.size())) {
+                while (thread.getState() != Thread.State.WAITING) {
+                    Thread.sleep(1);
+                }
+            }
+            release.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(List.of(Set.of("a"), Set.of("b", "c", "x")), calls);
+            assertEquals("b", results.get("b").get().getName());
+            assertEquals("c", results.get("c").get().getName());
+            assertFalse(results.get("x").isPresent());
+        });
+    }
+
+    private Thread lookUp(String name, Map<String, Optional<VirtualFile>> results) {
+        Thread thread = new Thread(() -> {
+            try {
+                results.put(name, batcher.find(directory, name));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,75 @@
+package org.dhatim.fs.virtual;
+
+import org.dhatim.fs.memory.MemoryDirectory;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SharedVirtualFileCacheTest {
+
+    private final SharedVirtualFileCache shared = new SharedVirtualFileCache(1000, 1, TimeUnit.HOURS);
+    private final SharedVirtualFileCache.View view = shared.view("tenant");
+    private final SharedVirtualFileCache.View other = shared.view("other");
+
+    private VirtualFile put(SharedVirtualFileCache.View v, String path) {
+        VirtualFile file = new MemoryDirectory();
+        v.put(path, file);
+        return file;
+    }
+
+    @Test
+    void moveTree() {
+        VirtualFile a = put(view, "/a");
+        VirtualFile ab = put(view, "/a/b");
+        VirtualFile abc = put(view, "/a/b/c");
+        VirtualFile sibling = put(view, "/ab");
+        VirtualFile foreign = put(other, "/a/b");
+
+        view.moveTree("/a", "/x/y");
+
+        assertNull(view.getIfPresent("/a"));
+        assertNull(view.getIfPresent("/a/b"));
+        assertNull(view.getIfPresent("/a/b/c"));
+        assertSame(a, view.getIfPresent("/x/y"));
+        assertSame(ab, view.getIfPresent("/x/y/b"));
+        assertSame(abc, view.getIfPresent("/x/y/b/c"));
+        assertSame(sibling, view.getIfPresent("/ab"));
+        assertSame(foreign, other.getIfPresent("/a/b"));
+
+        // the moved entries are indexed under their new paths
+        view.invalidateTree("/x");
+        assertNull(view.getIfPresent("/x/y/b/c"));
+        assertSame(sibling, view.getIfPresent("/ab"));
+        assertEquals(2, shared.size());
+    }
+
+    @Test
+    void invalidateTree() throws Exception {
+        put(view, "/a");
+        put(view, "/a/b");
+        VirtualFile loaded = new MemoryDirectory();
+        assertSame(loaded, view.get("/a/c", () -> loaded));
+        VirtualFile sibling = put(view, "/a.txt");
+        VirtualFile foreign = put(other, "/a");
+
+        view.invalidateTree("/a");
+
+        assertNull(view.getIfPresent("/a"));
+        assertNull(view.getIfPresent("/a/b"));
+        assertNull(view.getIfPresent("/a/c"));
+        assertSame(sibling, view.getIfPresent("/a.txt"));
+        assertSame(foreign, other.getIfPresent("/a"));
+
+        // paths cached again after an invalidation are indexed again
+        VirtualFile again = put(view, "/a/b");
+        assertSame(again, view.getIfPresent("/a/b"));
+        view.invalidateAll();
+        assertNull(view.getIfPresent("/a/b"));
+        assertNull(view.getIfPresent("/a.txt"));
+        assertSame(foreign, other.getIfPresent("/a"));
+    }
+}
@@ -0,0 +1,74 @@
+package org.dhatim.fs.virtual;
+
+import org.dhatim.fs.base.VirtualPath;
+import org.dhatim.fs.memory.MemoryDirectory;
+import org.dhatim.fs.memory.MemoryFileSystem;
+import org.dhatim.fs.memory.MemoryFileSystemProvider;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotVirtualFileSystemTest {
+
+    private static List<String> names(DirectoryStream<Path> stream) throws IOException {
+        List<String> names = new ArrayList<>();
+        try (stream) {
+            stream.forEach(path -> names.add(path.toString()));
+        }
+        names.sort(null);
+        return names;
+    }
+
+    @Test
+    void asyncLookupsUseTheSnapshot() throws IOException {
+        MemoryFileSystemProvider provider = new MemoryFileSystemProvider();
+        MemoryDirectory tree = new MemoryDirectory();
+        try (FileSystem memory = new MemoryFileSystem(provider, URI.create("memory://tree"), tree);
+             VirtualFileSystem snapshot = new SnapshotVirtualFileSystem(provider, URI.create("memory://snapshot")) {
+                 {
+                     setRoot(tree);
+                 }
+
+                 @Override
+                 public VirtualUserPrincipalLookupService getUserPrincipalLookupService() {
+                     return (VirtualUserPrincipalLookupService) memory.getUserPrincipalLookupService();
+                 }
+             }) {
+            Files.createDirectory(memory.getPath("/dir"));
+            Files.write(memory.getPath("/dir/a.txt"), new byte[]{1});
+            Files.write(memory.getPath("/dir/b.bin"), new byte[]{2});
+
+            VirtualPath dir = (VirtualPath) snapshot.getPath("/dir");
+            assertEquals("a.txt", snapshot.resolveAsync(dir.resolve("a.txt")).join().getName());
+            CompletionException e = assertThrows(CompletionException.class, () -> snapshot.resolveAsync(dir.resolve("c")).join());
+            assertTrue(e.getCause() instanceof NoSuchFileException);
+
+            // a prefetched listing serves the next opening of the directory only
+            snapshot.prefetchDirectory(dir).join();
+            Files.delete(memory.getPath("/dir/b.bin"));
+            assertEquals(List.of("/dir/a.txt", "/dir/b.bin"), names(Files.newDirectoryStream(dir)));
+            assertEquals(List.of("/dir/a.txt"), names(Files.newDirectoryStream(dir)));
+
+            Files.write(memory.getPath("/dir/b.txt"), new byte[]{2});
+            snapshot.prefetchDirectory(dir).join();
+            assertEquals(List.of("/dir/a.txt", "/dir/b.txt"), names(Files.newDirectoryStream(dir, snapshot.newNameFilter("*.txt"))));
+            snapshot.prefetchDirectory(dir).join();
+            snapshot.discardPrefetched(dir);
+            Files.delete(memory.getPath("/dir/b.txt"));
+            assertEquals(List.of("/dir/a.txt"), names(Files.newDirectoryStream(dir, snapshot.newNameFilter("*.txt"))));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.dhatim.fs.virtual;
+
+import org.dhatim.fs.base.VirtualPath;
+import org.dhatim.fs.memory.MemoryDirectory;
+import org.dhatim.fs.memory.MemoryFileSystem;
+import org.dhatim.fs.memory.MemoryFileSystemProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class VirtualFileSystemHashTest {
+
+    private final Map<String, byte[]> precomputed = new HashMap<>();
+    private final HashCache hashCache = new HashCache(100);
+    private VirtualFileSystem fs;
+
+    @BeforeEach
+    void open() {
+        MemoryDirectory root = new MemoryDirectory() {
+            @Override
+            public Optional<VirtualFile> find(String name) {
+                return super.find(name).map(file -> precomputed.isEmpty() ? file : withPrecomputedHashes(file));
+            }
+        };
+        fs = new MemoryFileSystem(new MemoryFileSystemProvider(), URI.create("memory://hash"), root) {
+            {
+                setHashCache(hashCache);
+            }
+        };
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        fs.close();
+    }
+
+    /**
+     * @return the file with the hashes a remote backend would report
+     */
+    private VirtualFile withPrecomputedHashes(VirtualFile file) {
+        return (VirtualFile) Proxy.newProxyInstance(VirtualFile.class.getClassLoader(), new Class<?>[]{VirtualFile.class}, (proxy, method, args) -> {
+            if (method.getName().equals("getHash")) {
+                return Optional.ofNullable(precomputed.get((String) args[0]));
+            }
+            try {
+                return method.invoke(file, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    private VirtualPath write(String name, String content) throws IOException {
+        VirtualPath path = (VirtualPath) fs.getPath("/" + name);
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    private static byte[] md5(String content) throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance("MD5").digest(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void backendHashIsServed() throws IOException {
+        VirtualPath path = write("a", "hello");
+        byte[] stored = {1, 2, 3};
+        precomputed.put("MD5", stored);
+        assertArrayEquals(stored, fs.hash(path, "MD5").get());
+        assertArrayEquals(stored, fs.hash(path, 0, 0, 0, "MD5").get());
+        assertEquals(0, hashCache.stats().requestCount());
+    }
+
+    @Test
+    void cachedHashFollowsVersion() throws IOException, NoSuchAlgorithmException {
+        VirtualPath path = write("a", "hello");
+        assertArrayEquals(md5("hello"), fs.hash(path, "MD5").get());
+        assertEquals(1, hashCache.stats().missCount());
+        assertArrayEquals(md5("hello"), fs.hash(path, "MD5").get());
+        assertEquals(1, hashCache.stats().hitCount());
+
+        write("a", "world");
+        assertArrayEquals(md5("world"), fs.hash(path, "MD5").get());
+        assertEquals(2, hashCache.stats().missCount());
+        assertEquals(1, hashCache.stats().hitCount());
+    }
+
+    @Test
+    void partialRangeIsNotHashed() throws IOException, NoSuchAlgorithmException {
+        VirtualPath path = write("a", "hello");
+        assertFalse(fs.hash(path, 1, 0, 0, "MD5").isPresent());
+        assertFalse(fs.hash(path, 0, 4, 0, "MD5").isPresent());
+        assertFalse(fs.hash(path, 0, 0, 2, "MD5").isPresent());
+        assertArrayEquals(md5("hello"), fs.hash(path, 0, 5, 5, "MD5").get());
+    }
+}